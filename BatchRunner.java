@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays a batch of games on a pool of worker threads. Every worker creates
+ * its own strategy instance and a new board for each game, and takes the
+ * next game from a shared counter, so workers that get easy games simply
+ * play more of them. Results go to a ProgressReporter, whose striped
+ * counters the workers update without contending for a lock, and to a
+ * Recorder of the worker's own for the histograms. On virtual threads
+ * every game gets a thread of its own instead, which borrows a strategy
+ * and its recorder from those the finished games left behind.
+ * @author joar
+ */
+public final class BatchRunner {
+
+    private final String strategyName;
+    private final int mines;
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final long budgetMillis;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+
+    /**
+     * Creates a runner.
+     * @param strategyName the strategy as for GameOptions.newStrategy, created once per worker
+     * @param mines number of mines
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param seed game n is played on the board of seed + n
+     * @param budgetMillis time per game before it is cancelled, 0 for no limit
+     */
+    public BatchRunner(String strategyName, int mines, int rows, int columns,
+            long seed, long budgetMillis){
+        this.strategyName = strategyName;
+        this.mines = mines;
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Plays the games and waits for all of them to finish.
+     * @param games number of games
+     * @param threads number of workers
+     * @param virtual play every game on its own virtual thread, if the JVM has them,
+     * with as many in flight as the larger of threads and the number of processors
+     * @param precision stop once the reporter is this precise, 0 to play all games
+     * @param reporter where the results of the games are recorded
+     * @throws ReflectiveOperationException if the strategy can not be created
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run(int games, int threads, boolean virtual, double precision,
+            ProgressReporter reporter)
+            throws ReflectiveOperationException, InterruptedException{
+        // Fail here rather than in every worker
+        GameOptions.newStrategy(strategyName);
+
+        ExecutorService pool = virtual ? virtualThreads(reporter.messages()) : null;
+        if(pool != null){
+            runPerGame(pool, games, Math.max(threads, Runtime.getRuntime().availableProcessors()),
+                precision, reporter);
+            return;
+        }
+        pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++){
+            workers.add(pool.submit(new Worker(games, precision, reporter)));
+        }
+        pool.shutdown();
+        try{
+            for(Future<?> worker:workers){
+                worker.get();
+            }
+        }catch(ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * Plays every game on a thread of its own. The games in flight are limited
+     * so the threads waiting to run don't all hold a board at once.
+     */
+    private void runPerGame(ExecutorService pool, int games, int inFlight, final double precision,
+            final ProgressReporter reporter) throws ReflectiveOperationException, InterruptedException{
+        final Semaphore slots = new Semaphore(inFlight);
+        final ConcurrentLinkedQueue<Player> players = new ConcurrentLinkedQueue<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        try{
+            for(int n = 0; n < games && !reporter.precise(precision) && failure.get() == null; n++){
+                final long gameSeed = seed + n;
+                slots.acquire();
+                pool.execute(new Runnable(){
+                    @Override
+                    public void run(){
+                        Player player = players.poll();
+                        try{
+                            if(player == null){
+                                player = new Player(reporter);
+                            }
+                            playGame(player.strategy, mines, rows, columns, gameSeed, budgetMillis,
+                                player.recorder, reporter.messages());
+                        }catch(Throwable e){
+                            failure.compareAndSet(null, e);
+                        }finally{
+                            if(player != null){
+                                players.add(player);
+                            }
+                            slots.release();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }finally{
+            pool.shutdownNow();
+        }
+        Throwable e = failure.get();
+        if(e instanceof ReflectiveOperationException){
+            throw (ReflectiveOperationException)e;
+        }else if(e != null){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Outcomes of play
+     */
+    public static final int LOST = 0;
+    public static final int WON = 1;
+    public static final int TIMED_OUT = 2;
+
+    /**
+     * Plays one game. With a budget the game gets a CancellationToken, and
+     * if it is cancelled before it is done it timed out rather than lost.
+     * @param s the strategy
+     * @param m the map, not wrapped
+     * @param budgetMillis time before the game is cancelled, 0 for no limit
+     * @param errors where an exception thrown by the strategy is reported
+     * @return WON, LOST or TIMED_OUT
+     */
+    public static int play(Strategy s, Map m, long budgetMillis, LogSink errors){
+        CancellationToken token = null;
+        Map played = m;
+        if(budgetMillis > 0){
+            token = new CancellationToken(budgetMillis);
+            played = new CancellableMap(m, token);
+        }
+        try{
+            if(s instanceof CancellableStrategy){
+                ((CancellableStrategy)s).play(played, token);
+            }else{
+                s.play(played);
+            }
+        }catch(GameCancelledException e){
+            // Timed out, unless it was done anyway
+        }catch(RuntimeException e){
+            errors.log(e.toString());
+        }
+        if(token != null && token.isCancelled() && !m.done()){
+            return TIMED_OUT;
+        }
+        return m.won() ? WON : LOST;
+    }
+
+    /**
+     * Plays one game and records it, a game that timed out with its seed
+     * instead of as lost. Games already in the results log are skipped.
+     * @param s the strategy
+     * @param mines number of mines
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param seed seed of the board
+     * @param budgetMillis time before the game is cancelled, 0 for no limit
+     * @param recorder where the game is recorded
+     * @param errors where an exception thrown by the strategy is reported
+     */
+    public static void playGame(Strategy s, int mines, int rows, int columns, long seed,
+            long budgetMillis, ProgressReporter.Recorder recorder, LogSink errors){
+        if(recorder.done(seed)){
+            return;
+        }
+        MineMap m = new MineMap(mines, rows, columns, seed);
+        long before = System.nanoTime();
+        int outcome = play(s, m, budgetMillis, errors);
+        long nanos = System.nanoTime() - before;
+        recorder.record(seed, outcome, m.probed(), m.moves(), nanos);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor, looked up so older JVMs still run
+    private static ExecutorService virtualThreads(LogSink messages){
+        try{
+            return (ExecutorService)Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }catch(ReflectiveOperationException e){
+            messages.log("Virtual threads not available, using platform threads");
+            return null;
+        }
+    }
+
+    // A strategy with the recorder listening to it, used by one game at a time
+    private final class Player {
+
+        final Strategy strategy;
+        final ProgressReporter.Recorder recorder;
+
+        Player(ProgressReporter reporter) throws ReflectiveOperationException{
+            strategy = GameOptions.newStrategy(strategyName);
+            recorder = reporter.recorder();
+            recorder.listenTo(strategy);
+        }
+    }
+
+    private final class Worker implements Callable<Void> {
+
+        private final int games;
+        private final double precision;
+        private final ProgressReporter reporter;
+
+        Worker(int games, double precision, ProgressReporter reporter){
+            this.games = games;
+            this.precision = precision;
+            this.reporter = reporter;
+        }
+
+        @Override
+        public Void call() throws ReflectiveOperationException{
+            Strategy s = GameOptions.newStrategy(strategyName);
+            ProgressReporter.Recorder recorder = reporter.recorder();
+            recorder.listenTo(s);
+            int n;
+            while(!reporter.precise(precision) && (n = nextGame.getAndIncrement()) < games){
+                playGame(s, mines, rows, columns, seed + n, budgetMillis, recorder, reporter.messages());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Map that checks a CancellationToken on every call that reads or changes
+ * the board, so a strategy that only plays through the Map still stops
+ * soon after its game is cancelled. Strategies with long searches of their
+ * own, like OurStrategy, also check the token while searching.
+ * @author joar
+ */
+public final class CancellableMap implements Map {
+
+    private final Map m;
+    private final CancellationToken token;
+
+    /**
+     * Wraps a map.
+     * @param m the map
+     * @param token the token of the game
+     */
+    public CancellableMap(Map m, CancellationToken token){
+        this.m = m;
+        this.token = token;
+    }
+
+    /**
+     * @return the token of the game
+     */
+    public CancellationToken token(){
+        return token;
+    }
+
+    @Override
+    public int probe(int x, int y){
+        token.check();
+        return m.probe(x, y);
+    }
+
+    @Override
+    public int mark(int x, int y){
+        token.check();
+        return m.mark(x, y);
+    }
+
+    @Override
+    public int unmark(int x, int y){
+        token.check();
+        return m.unmark(x, y);
+    }
+
+    @Override
+    public int look(int x, int y){
+        token.check();
+        return m.look(x, y);
+    }
+
+    @Override
+    public boolean won(){
+        return m.won();
+    }
+
+    @Override
+    public boolean done(){
+        return m.done();
+    }
+
+    @Override
+    public boolean probed(){
+        return m.probed();
+    }
+
+    @Override
+    public int mines_minus_marks(){
+        return m.mines_minus_marks();
+    }
+
+    @Override
+    public int rows(){
+        return m.rows();
+    }
+
+    @Override
+    public int columns(){
+        return m.columns();
+    }
+
+    @Override
+    public void display(){
+        m.display();
+    }
+
+    @Override
+    public int pick(int n){
+        return m.pick(n);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Strategy whose own searches can be cancelled. The harness hands it the
+ * token of the game along with the Map, so it can check the token while it
+ * thinks and not only when it calls the Map.
+ * @see CancellableMap
+ * @author joar
+ */
+public interface CancellableStrategy extends Strategy {
+
+    /**
+     * Plays a game of mine sweeper.
+     * @param m the map of mines
+     * @param token token of the game, null if it can't be cancelled
+     * @throws GameCancelledException if the token is cancelled
+     */
+    void play(Map m, CancellationToken token);
+}
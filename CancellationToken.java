@@ -0,0 +1,48 @@
+/**
+ * Tells a game in progress that it should stop, either because its time
+ * budget is spent or because cancel was called from another thread. The
+ * game checks it at points where stopping is safe and throws a
+ * GameCancelledException there, which unwinds it back to the harness.
+ * @see CancellableMap
+ * @author joar
+ */
+public final class CancellationToken {
+
+    private final long deadline; // System.nanoTime at which the game is cancelled, 0 for never
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token.
+     * @param budgetMillis time from now until the token cancels itself, 0 for never
+     */
+    public CancellationToken(long budgetMillis){
+        deadline = budgetMillis > 0 ? System.nanoTime() + budgetMillis*1000000 : 0;
+    }
+
+    /**
+     * Cancels the game, from any thread.
+     */
+    public void cancel(){
+        cancelled = true;
+    }
+
+    /**
+     * @return true once cancel was called or the time budget is spent
+     */
+    public boolean isCancelled(){
+        if(!cancelled && deadline != 0 && System.nanoTime() - deadline > 0){
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Throws if the game is cancelled.
+     * @throws GameCancelledException if isCancelled
+     */
+    public void check(){
+        if(isCancelled()){
+            throw new GameCancelledException();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+import java.util.*;
+
+/**
+ * A small conflict driven clause learning SAT solver. Clauses are watched by
+ * two literals, conflicts are analysed to the first unique implication point
+ * and the learned clause decides how far to backjump. Decisions follow
+ * variable activity with saved phases and the search restarts on the Luby
+ * sequence. The solver is incremental: clauses may be added between calls
+ * and every call may assume a set of literals, learned clauses are kept.
+ * Literals are written as in DIMACS, variable v is v and its negation -v.
+ * @author joar
+ */
+public final class CdclSolver {
+
+    private static final int RESTART_BASE = 100; // Conflicts in the first restart interval
+    private static final double DECAY = 0.95;
+
+    private int nVars;
+    private final ArrayList<int[]> clauses = new ArrayList<>();
+    private int[][] watches = new int[0][]; // clause indices watched by each literal
+    private int[] watchCount = new int[0];
+    private int[] assign = new int[0]; // -1 unassigned, 0 false, 1 true
+    private int[] level = new int[0];
+    private int[] reason = new int[0]; // clause that implied the variable, -1 if none
+    private boolean[] phase = new boolean[0]; // value the variable last had
+    private boolean[] seen = new boolean[0];
+    private double[] activity = new double[0];
+    private double increment = 1.0;
+    private int[] trail = new int[0];
+    private int trailSize;
+    private int queueHead;
+    private int[] levelStart = new int[0]; // trail position where each decision level begins
+    private int decisionLevel;
+    private boolean unsatisfiable;
+    private boolean[] model = new boolean[0];
+    private long conflicts;
+    private CancellationToken token; // Checked at every conflict, null for never
+    private long deadline; // System.nanoTime at which solve gives up, 0 for never
+    private boolean timedOut;
+
+    /**
+     * Adds a variable.
+     * @return the variable, numbered from 1
+     */
+    public int newVar(){
+        int v = nVars++;
+        if(v == assign.length){
+            int size = Math.max(16, 2*v);
+            watches = Arrays.copyOf(watches, 2*size);
+            watchCount = Arrays.copyOf(watchCount, 2*size);
+            for(int l = 2*v; l < 2*size; l++){
+                watches[l] = new int[4];
+            }
+            assign = Arrays.copyOf(assign, size);
+            level = Arrays.copyOf(level, size);
+            reason = Arrays.copyOf(reason, size);
+            phase = Arrays.copyOf(phase, size);
+            seen = Arrays.copyOf(seen, size);
+            activity = Arrays.copyOf(activity, size);
+            trail = Arrays.copyOf(trail, size);
+            levelStart = Arrays.copyOf(levelStart, size + 1);
+            model = Arrays.copyOf(model, size);
+        }
+        assign[v] = -1;
+        reason[v] = -1;
+        return v + 1;
+    }
+
+    /**
+     * @return number of variables
+     */
+    public int nrVars(){
+        return nVars;
+    }
+
+    /**
+     * @return number of conflicts met in all calls to solve
+     */
+    public long conflicts(){
+        return conflicts;
+    }
+
+    /**
+     * Adds a clause, the disjunction of the literals.
+     * @param literals DIMACS literals
+     */
+    public void addClause(int... literals){
+        cancelUntil(0);
+        if(unsatisfiable){
+            return;
+        }
+        int[] clause = new int[literals.length];
+        int size = 0;
+        for(int d:literals){
+            int lit = toLit(d);
+            int value = value(lit);
+            if(value == 1 || contains(clause, size, lit ^ 1)){
+                return; // Already satisfied or a tautology
+            }
+            if(value == -1 && !contains(clause, size, lit)){
+                clause[size++] = lit; // Literals false at level 0 are dropped
+            }
+        }
+        if(size == 0){
+            unsatisfiable = true;
+        }else if(size == 1){
+            enqueue(clause[0], -1);
+            unsatisfiable = propagate() != -1;
+        }else{
+            attach(Arrays.copyOf(clause, size));
+        }
+    }
+
+    /**
+     * Adds the constraint that exactly k of the literals are true.
+     * @param literals DIMACS literals
+     * @param k number of true literals
+     */
+    public void addExactly(int[] literals, int k){
+        addAtMost(literals, k);
+        int[] negated = new int[literals.length];
+        for(int i = 0; i < literals.length; i++){
+            negated[i] = -literals[i];
+        }
+        addAtMost(negated, literals.length - k);
+    }
+
+    /**
+     * Adds the constraint that at most k of the literals are true. Small
+     * constraints forbid every set of k+1 literals directly, large ones use
+     * a sequential counter with auxiliary variables.
+     * @param literals DIMACS literals
+     * @param k max number of true literals
+     */
+    public void addAtMost(int[] literals, int k){
+        int n = literals.length;
+        if(k >= n){
+            return;
+        }
+        if(k < 0){
+            addClause();
+            return;
+        }
+        if(binomial(n, k + 1) <= 4*n*(k + 1)){
+            int[] subset = new int[k + 1];
+            forbid(literals, subset, 0, 0);
+            return;
+        }
+        if(k == 0){
+            for(int lit:literals){
+                addClause(-lit);
+            }
+            return;
+        }
+        // s[i][j] is true when at least j+1 of the first i+1 literals are true
+        int[][] s = new int[n - 1][k];
+        for(int i = 0; i < n - 1; i++){
+            for(int j = 0; j < k; j++){
+                s[i][j] = newVar();
+            }
+        }
+        addClause(-literals[0], s[0][0]);
+        for(int j = 1; j < k; j++){
+            addClause(-s[0][j]);
+        }
+        for(int i = 1; i < n - 1; i++){
+            addClause(-literals[i], s[i][0]);
+            addClause(-s[i - 1][0], s[i][0]);
+            for(int j = 1; j < k; j++){
+                addClause(-literals[i], -s[i - 1][j - 1], s[i][j]);
+                addClause(-s[i - 1][j], s[i][j]);
+            }
+            addClause(-literals[i], -s[i - 1][k - 1]);
+        }
+        addClause(-literals[n - 1], -s[n - 2][k - 1]);
+    }
+
+    /**
+     * Lets the game the solver works for cancel a solve in progress.
+     * @param token checked at every conflict, null for never
+     */
+    public void setToken(CancellationToken token){
+        this.token = token;
+    }
+
+    /**
+     * Bounds the time of every later solve. A solve that runs out of time returns
+     * false without deciding anything, timedOut then tells it apart.
+     * @param deadline value of System.nanoTime at which to give up, 0 for never
+     */
+    public void setDeadline(long deadline){
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the last solve gave up at the deadline
+     */
+    public boolean timedOut(){
+        return timedOut;
+    }
+
+    /**
+     * Searches for an assignment satisfying all clauses and assumptions.
+     * @param assumptions DIMACS literals that must be true
+     * @return true if one was found, it is then available from modelValue, false if
+     * there is none or the deadline passed
+     * @throws GameCancelledException if the token is cancelled while searching
+     */
+    public boolean solve(int... assumptions){
+        cancelUntil(0);
+        timedOut = false;
+        if(unsatisfiable){
+            return false;
+        }
+        if(levelStart.length < nVars + assumptions.length + 1){
+            levelStart = Arrays.copyOf(levelStart, nVars + assumptions.length + 1);
+        }
+        int[] assumed = new int[assumptions.length];
+        for(int i = 0; i < assumed.length; i++){
+            assumed[i] = toLit(assumptions[i]);
+        }
+        int restart = 0;
+        long restartLimit = conflicts + RESTART_BASE*luby(restart);
+        ArrayList<Integer> learnt = new ArrayList<>();
+        while(true){
+            int conflict = propagate();
+            if(conflict != -1){
+                conflicts++;
+                if(token != null){
+                    token.check();
+                }
+                if(deadline != 0 && System.nanoTime() - deadline > 0){
+                    cancelUntil(0);
+                    timedOut = true;
+                    return false;
+                }
+                if(decisionLevel == 0){
+                    unsatisfiable = true;
+                    return false;
+                }
+                int backjump = analyze(conflict, learnt);
+                cancelUntil(backjump);
+                if(learnt.size() == 1){
+                    enqueue(learnt.get(0), -1);
+                }else{
+                    int[] clause = new int[learnt.size()];
+                    for(int i = 0; i < clause.length; i++){
+                        clause[i] = learnt.get(i);
+                    }
+                    enqueue(clause[0], attach(clause));
+                }
+                increment /= DECAY;
+                if(conflicts >= restartLimit){
+                    cancelUntil(0);
+                    restartLimit = conflicts + RESTART_BASE*luby(++restart);
+                }
+            }else if(decisionLevel < assumed.length){
+                int lit = assumed[decisionLevel];
+                if(value(lit) == 0){
+                    cancelUntil(0);
+                    return false; // The assumptions contradict the clauses
+                }
+                levelStart[++decisionLevel] = trailSize;
+                if(value(lit) == -1){
+                    enqueue(lit, -1);
+                }
+            }else{
+                int v = pickBranchVar();
+                if(v == -1){
+                    for(int u = 0; u < nVars; u++){
+                        model[u] = assign[u] == 1;
+                    }
+                    cancelUntil(0);
+                    return true;
+                }
+                levelStart[++decisionLevel] = trailSize;
+                enqueue(2*v + (phase[v] ? 0 : 1), -1);
+            }
+        }
+    }
+
+    /**
+     * @param v variable, numbered from 1
+     * @return value of the variable in the last found assignment
+     */
+    public boolean modelValue(int v){
+        return model[v - 1];
+    }
+
+    private int attach(int[] clause){
+        int index = clauses.size();
+        clauses.add(clause);
+        watch(clause[0], index);
+        watch(clause[1], index);
+        return index;
+    }
+
+    private void watch(int lit, int clause){
+        if(watchCount[lit] == watches[lit].length){
+            watches[lit] = Arrays.copyOf(watches[lit], 2*watchCount[lit]);
+        }
+        watches[lit][watchCount[lit]++] = clause;
+    }
+
+    // Propagates all enqueued literals, returns a conflicting clause or -1
+    private int propagate(){
+        while(queueHead < trailSize){
+            int falseLit = trail[queueHead++] ^ 1;
+            int[] list = watches[falseLit];
+            int count = watchCount[falseLit];
+            int kept = 0;
+            int i = 0;
+            while(i < count){
+                int index = list[i++];
+                int[] clause = clauses.get(index);
+                if(clause[0] == falseLit){
+                    clause[0] = clause[1];
+                    clause[1] = falseLit;
+                }
+                if(value(clause[0]) == 1){
+                    list[kept++] = index;
+                    continue;
+                }
+                boolean moved = false;
+                for(int k = 2; k < clause.length; k++){
+                    if(value(clause[k]) != 0){
+                        clause[1] = clause[k];
+                        clause[k] = falseLit;
+                        watch(clause[1], index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if(moved){
+                    continue;
+                }
+                list[kept++] = index;
+                if(value(clause[0]) == 0){
+                    while(i < count){
+                        list[kept++] = list[i++];
+                    }
+                    watchCount[falseLit] = kept;
+                    queueHead = trailSize;
+                    return index;
+                }
+                enqueue(clause[0], index);
+            }
+            watchCount[falseLit] = kept;
+        }
+        return -1;
+    }
+
+    /*
+     * Derives the first unique implication point clause of a conflict into
+     * learnt, asserting literal first, and returns the level to backjump to.
+     */
+    private int analyze(int conflict, ArrayList<Integer> learnt){
+        learnt.clear();
+        learnt.add(-1);
+        int pathCount = 0;
+        int lit = -1;
+        int index = trailSize - 1;
+        int[] clause = clauses.get(conflict);
+        do{
+            for(int k = lit == -1 ? 0 : 1; k < clause.length; k++){
+                int q = clause[k];
+                int v = q >>> 1;
+                if(!seen[v] && level[v] > 0){
+                    seen[v] = true;
+                    bump(v);
+                    if(level[v] == decisionLevel){
+                        pathCount++;
+                    }else{
+                        learnt.add(q);
+                    }
+                }
+            }
+            while(!seen[trail[index] >>> 1]){
+                index--;
+            }
+            lit = trail[index--];
+            seen[lit >>> 1] = false;
+            pathCount--;
+            if(pathCount > 0){
+                clause = clauses.get(reason[lit >>> 1]);
+            }
+        }while(pathCount > 0);
+        learnt.set(0, lit ^ 1);
+
+        int backjump = 0;
+        int second = 1;
+        for(int i = 1; i < learnt.size(); i++){
+            int v = learnt.get(i) >>> 1;
+            seen[v] = false;
+            if(level[v] > backjump){
+                backjump = level[v];
+                second = i;
+            }
+        }
+        if(learnt.size() > 1){
+            // The literal of the backjump level is watched with the asserting one
+            int t = learnt.get(1);
+            learnt.set(1, learnt.get(second));
+            learnt.set(second, t);
+        }
+        return backjump;
+    }
+
+    private void bump(int v){
+        activity[v] += increment;
+        if(activity[v] > 1e100){
+            for(int u = 0; u < nVars; u++){
+                activity[u] *= 1e-100;
+            }
+            increment *= 1e-100;
+        }
+    }
+
+    private int pickBranchVar(){
+        int best = -1;
+        for(int v = 0; v < nVars; v++){
+            if(assign[v] == -1 && (best == -1 || activity[v] > activity[best])){
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private void enqueue(int lit, int from){
+        int v = lit >>> 1;
+        assign[v] = (lit & 1) ^ 1;
+        level[v] = decisionLevel;
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void cancelUntil(int target){
+        if(decisionLevel <= target){
+            return;
+        }
+        for(int i = trailSize - 1; i >= levelStart[target + 1]; i--){
+            int v = trail[i] >>> 1;
+            phase[v] = assign[v] == 1;
+            assign[v] = -1;
+            reason[v] = -1;
+        }
+        trailSize = levelStart[target + 1];
+        queueHead = trailSize;
+        decisionLevel = target;
+    }
+
+    // 1 if the literal is true, 0 if false, -1 if unassigned
+    private int value(int lit){
+        int a = assign[lit >>> 1];
+        return a == -1 ? -1 : a ^ (lit & 1);
+    }
+
+    private int toLit(int d){
+        if(d == 0 || Math.abs(d) > nVars){
+            throw new IllegalArgumentException("no such variable: " + d);
+        }
+        return 2*(Math.abs(d) - 1) + (d < 0 ? 1 : 0);
+    }
+
+    private void forbid(int[] literals, int[] subset, int size, int start){
+        if(size == subset.length){
+            int[] clause = new int[size];
+            for(int i = 0; i < size; i++){
+                clause[i] = -subset[i];
+            }
+            addClause(clause);
+            return;
+        }
+        for(int i = start; i <= literals.length - (subset.length - size); i++){
+            subset[size] = literals[i];
+            forbid(literals, subset, size + 1, i + 1);
+        }
+    }
+
+    private static boolean contains(int[] array, int size, int value){
+        for(int i = 0; i < size; i++){
+            if(array[i] == value){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long binomial(int n, int k){
+        long b = 1;
+        for(int i = 1; i <= k; i++){
+            b = b*(n - k + i)/i;
+            if(b > Integer.MAX_VALUE){
+                return b;
+            }
+        }
+        return b;
+    }
+
+    // 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+    private static long luby(int i){
+        int size = 1;
+        int seq = 0;
+        while(size < i + 1){
+            seq++;
+            size = 2*size + 1;
+        }
+        while(size - 1 != i){
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1L << seq;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * 95% confidence intervals for win rates. Both intervals stay wide while
+ * few games have been played, even when every game so far went the same
+ * way, so a run can stop as soon as its interval is narrow enough.
+ * @author joar
+ */
+public final class Confidence {
+
+    /**
+     * Normal quantile of a 95% interval
+     */
+    public static final double Z95 = 1.96;
+
+    /**
+     * Games played before a run may stop early, checking the interval after
+     * every game makes an early lucky streak look more certain than it is
+     */
+    public static final long MIN_GAMES = 100;
+
+    private Confidence(){ }
+
+    /**
+     * Wilson score interval of a win rate.
+     * @param wins games won
+     * @param games games played
+     * @return low and high end of the interval
+     */
+    public static double[] wilson(long wins, long games){
+        if(games == 0){
+            return new double[]{0, 1};
+        }
+        double p = (double)wins/games;
+        double z2 = Z95*Z95/games;
+        double center = (p + z2/2)/(1 + z2);
+        double half = Z95*Math.sqrt(p*(1 - p)/games + z2/(4*games))/(1 + z2);
+        return new double[]{Math.max(0, center - half), Math.min(1, center + half)};
+    }
+
+    /**
+     * Interval of the difference between the win rates of two strategies that
+     * played the same boards, adjusted by half a board in every cell of the
+     * paired table (Agresti and Min).
+     * @param onlyFirst boards only the first strategy won
+     * @param onlySecond boards only the second strategy won
+     * @param games boards played by both
+     * @return low and high end of the interval of the first win rate minus the second
+     */
+    public static double[] pairedDifference(long onlyFirst, long onlySecond, long games){
+        double b = onlyFirst + 0.5;
+        double c = onlySecond + 0.5;
+        double n = games + 2;
+        double diff = (b - c)/n;
+        double se = Math.sqrt(Math.max(0, b + c - (b - c)*(b - c)/n))/n;
+        return new double[]{diff - Z95*se, diff + Z95*se};
+    }
+
+    /**
+     * @param interval low and high end
+     * @return half the width of the interval
+     */
+    public static double halfWidth(double[] interval){
+        return (interval[1] - interval[0])/2;
+    }
+}
@@ -0,0 +1,368 @@
+import java.util.*;
+
+/**
+ * Counts the solutions of a fringe by dynamic programming over a path
+ * decomposition. The cells are laid out along the frontier (a Cuthill-McKee
+ * order), and at every cut between two cells the only thing that matters to
+ * the rest of the fringe is the partial sum of each constraint crossing the
+ * cut. A forward and a backward pass count, for each such state, the ways to
+ * assign the cells on that side broken down by mines used, and joining the
+ * two passes at each cell gives its mine and safe counts. The cost grows
+ * with the number of constraints crossing a cut, not with the fringe size,
+ * but the number of states can still blow up on a long fringe of wide
+ * cuts, so the passes stop after a budget of steps or at a deadline, and
+ * check the cancellation token of the game as they go.
+ * @author joar
+ */
+public final class FrontierCounter {
+
+    /**
+     * Most constraints that may cross a cut, each keeps a 4 bit sum in a long
+     */
+    public static final int MAX_WIDTH = 16;
+
+    private final int maxMines;
+    private final double[] solutions; // by mines used
+    private final double[][] mines; // [v][k] solutions where v is a mine
+    private final double[][] safe; // [v][k] solutions where v is safe
+    private final int width;
+
+    private FrontierCounter(int nVars, int maxMines, int width){
+        this.maxMines = maxMines;
+        this.width = width;
+        solutions = new double[maxMines + 1];
+        mines = new double[nVars][maxMines + 1];
+        safe = new double[nVars][maxMines + 1];
+    }
+
+    /**
+     * Counts the solutions of a fringe.
+     * @param nVars number of variables
+     * @param constraints variable indices of each constraint
+     * @param sums sum of each constraint
+     * @param maxMines max number of mines among the variables
+     * @param maxSteps states the passes may extend, 0 for no limit
+     * @param deadline System.nanoTime at which counting gives up, 0 for never
+     * @param token checked every 1024 steps, null for never
+     * @return the counts, or null if more than MAX_WIDTH constraints cross a cut
+     * or the budget ran out
+     * @throws GameCancelledException if the token is cancelled
+     */
+    public static FrontierCounter count(int nVars, int[][] constraints, int[] sums, int maxMines,
+            long maxSteps, long deadline, CancellationToken token){
+        int nCons = constraints.length;
+        int[] varAt = frontierOrder(nVars, constraints);
+        int[] pos = new int[nVars];
+        for(int i = 0; i < nVars; i++){
+            pos[varAt[i]] = i;
+        }
+
+        // Span of each constraint along the order and what it touches at each position
+        int[] first = new int[nCons];
+        int[] last = new int[nCons];
+        int[][] positions = new int[nCons][];
+        ArrayList<ArrayList<Integer>> consAt = new ArrayList<>();
+        for(int i = 0; i < nVars; i++){
+            consAt.add(new ArrayList<Integer>());
+        }
+        for(int c = 0; c < nCons; c++){
+            positions[c] = new int[constraints[c].length];
+            for(int j = 0; j < positions[c].length; j++){
+                positions[c][j] = pos[constraints[c][j]];
+                consAt.get(positions[c][j]).add(c);
+            }
+            Arrays.sort(positions[c]);
+            first[c] = positions[c][0];
+            last[c] = positions[c][positions[c].length - 1];
+        }
+
+        // Give every constraint a slot of the state for as long as it spans
+        int[] slot = new int[nCons];
+        int[][] open = new int[nVars][]; // constraints crossing the cut after each position
+        int width = 0;
+        boolean[] used = new boolean[MAX_WIDTH];
+        ArrayList<Integer> active = new ArrayList<>();
+        for(int i = 0; i < nVars; i++){
+            for(int c:consAt.get(i)){
+                if(first[c] == i && last[c] > i){
+                    int s = 0;
+                    while(s < MAX_WIDTH && used[s]){
+                        s++;
+                    }
+                    if(s == MAX_WIDTH){
+                        return null;
+                    }
+                    used[s] = true;
+                    slot[c] = s;
+                    active.add(c);
+                }
+            }
+            width = Math.max(width, active.size());
+            for(Iterator<Integer> it = active.iterator(); it.hasNext();){
+                int c = it.next();
+                if(last[c] == i){
+                    used[slot[c]] = false;
+                    it.remove();
+                }
+            }
+            open[i] = new int[active.size()];
+            for(int j = 0; j < open[i].length; j++){
+                open[i][j] = active.get(j);
+            }
+        }
+
+        int top = Math.min(nVars, maxMines);
+        FrontierCounter result = new FrontierCounter(nVars, Math.max(top, 0), width);
+        if(top < 0){
+            return result;
+        }
+
+        // Backward pass, after[i] holds the states of positions i.. at the cut before i
+        long steps = 0;
+        ArrayList<HashMap<Long, double[]>> after = new ArrayList<>();
+        for(int i = 0; i <= nVars; i++){
+            after.add(null);
+        }
+        HashMap<Long, double[]> start = new HashMap<>();
+        start.put(0L, new double[]{1.0});
+        after.set(nVars, start);
+        for(int i = nVars - 1; i >= 0; i--){
+            HashMap<Long, double[]> next = new HashMap<>();
+            for(java.util.Map.Entry<Long, double[]> e:after.get(i + 1).entrySet()){
+                if(overBudget(++steps, maxSteps, deadline, token)){
+                    return null;
+                }
+                for(int x = 0; x < 2; x++){
+                    long key = step(e.getKey(), x, consAt.get(i), i, false,
+                        first, last, positions, slot, sums);
+                    if(key != -1){
+                        add(next, key, e.getValue(), x, Math.min(top, nVars - i));
+                    }
+                }
+            }
+            after.set(i, next);
+        }
+
+        // Forward pass, joined with the backward states at each cut
+        HashMap<Long, double[]> before = start;
+        for(int i = 0; i < nVars; i++){
+            int length = Math.min(top, i + 1);
+            HashMap<Long, double[]> safeStates = new HashMap<>();
+            HashMap<Long, double[]> mineStates = new HashMap<>();
+            for(java.util.Map.Entry<Long, double[]> e:before.entrySet()){
+                if(overBudget(++steps, maxSteps, deadline, token)){
+                    return null;
+                }
+                for(int x = 0; x < 2; x++){
+                    long key = step(e.getKey(), x, consAt.get(i), i, true,
+                        first, last, positions, slot, sums);
+                    if(key != -1){
+                        add(x == 0 ? safeStates : mineStates, key, e.getValue(), x, length);
+                    }
+                }
+            }
+            int v = varAt[i];
+            join(safeStates, after.get(i + 1), open[i], slot, sums, result.safe[v]);
+            join(mineStates, after.get(i + 1), open[i], slot, sums, result.mines[v]);
+            before = safeStates;
+            for(java.util.Map.Entry<Long, double[]> e:mineStates.entrySet()){
+                add(before, e.getKey(), e.getValue(), 0, length);
+            }
+        }
+        double[] total = before.get(0L);
+        if(total != null){
+            System.arraycopy(total, 0, result.solutions, 0, total.length);
+        }
+        return result;
+    }
+
+    /**
+     * @return max number of constraints crossing a cut
+     */
+    public int width(){
+        return width;
+    }
+
+    /**
+     * @return the max mines used that the counts are broken down by
+     */
+    public int maxMines(){
+        return maxMines;
+    }
+
+    /**
+     * @param k mines used
+     * @return number of solutions with k mines
+     */
+    public double solutions(int k){
+        return solutions[k];
+    }
+
+    /**
+     * @param v variable index
+     * @param k mines used
+     * @return number of solutions with k mines in which v is a mine
+     */
+    public double mines(int v, int k){
+        return mines[v][k];
+    }
+
+    /**
+     * @param v variable index
+     * @param k mines used
+     * @return number of solutions with k mines in which v is safe
+     */
+    public double safe(int v, int k){
+        return safe[v][k];
+    }
+
+    // The clock and the token are only read every 1024 steps
+    private static boolean overBudget(long steps, long maxSteps, long deadline,
+            CancellationToken token){
+        if((steps & 1023) != 0){
+            return maxSteps > 0 && steps > maxSteps;
+        }
+        if(token != null){
+            token.check();
+        }
+        return maxSteps > 0 && steps > maxSteps
+            || deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /*
+     * Adds the value x of the variable at position i to a state. Going forward
+     * constraints start at first and are checked at last, going backward the
+     * other way around. Returns the new state or -1 if a constraint is broken.
+     */
+    private static long step(long key, int x, ArrayList<Integer> cons, int i, boolean forward,
+            int[] first, int[] last, int[][] positions, int[] slot, int[] sums){
+        for(int c:cons){
+            boolean opens = forward ? first[c] == i : last[c] == i;
+            boolean closes = forward ? last[c] == i : first[c] == i;
+            int shift = 4*slot[c];
+            int partial = (opens ? 0 : (int)(key >>> shift & 15)) + x;
+            if(closes){
+                if(partial != sums[c]){
+                    return -1;
+                }
+                if(!opens){
+                    key &= ~(15L << shift);
+                }
+                continue;
+            }
+            int rest = 0; // cells of the constraint still to come
+            for(int p:positions[c]){
+                if(forward ? p > i : p < i){
+                    rest++;
+                }
+            }
+            if(partial > sums[c] || partial + rest < sums[c]){
+                return -1;
+            }
+            key = key & ~(15L << shift) | (long)partial << shift;
+        }
+        return key;
+    }
+
+    // Adds counts, shifted by the mines just used, to a state
+    private static void add(HashMap<Long, double[]> states, long key, double[] counts,
+            int shift, int length){
+        double[] sum = states.get(key);
+        if(sum == null){
+            sum = new double[length + 1];
+            states.put(key, sum);
+        }
+        for(int k = 0; k < counts.length && k + shift <= length; k++){
+            sum[k + shift] += counts[k];
+        }
+    }
+
+    // Adds the solutions made of a forward and a matching backward state
+    private static void join(HashMap<Long, double[]> forward, HashMap<Long, double[]> backward,
+            int[] open, int[] slot, int[] sums, double[] out){
+        for(java.util.Map.Entry<Long, double[]> e:forward.entrySet()){
+            long need = 0;
+            for(int c:open){
+                int shift = 4*slot[c];
+                need |= (long)(sums[c] - (int)(e.getKey() >>> shift & 15)) << shift;
+            }
+            double[] rest = backward.get(need);
+            if(rest == null){
+                continue;
+            }
+            double[] counts = e.getValue();
+            for(int a = 0; a < counts.length; a++){
+                if(counts[a] == 0){
+                    continue;
+                }
+                for(int b = 0; b < rest.length && a + b < out.length; b++){
+                    out[a + b] += counts[a]*rest[b];
+                }
+            }
+        }
+    }
+
+    /*
+     * Orders the variables along the frontier: a breadth first search from a
+     * far end of each connected part, visiting low degree neighbours first.
+     */
+    private static int[] frontierOrder(int nVars, int[][] constraints){
+        ArrayList<TreeSet<Integer>> neighbors = new ArrayList<>();
+        for(int v = 0; v < nVars; v++){
+            neighbors.add(new TreeSet<Integer>());
+        }
+        for(int[] vars:constraints){
+            for(int a:vars){
+                for(int b:vars){
+                    if(a != b){
+                        neighbors.get(a).add(b);
+                    }
+                }
+            }
+        }
+        int[] order = new int[nVars];
+        int[] scratch = new int[nVars];
+        int size = 0;
+        boolean[] placed = new boolean[nVars];
+        for(int v = 0; v < nVars; v++){
+            if(!placed[v]){
+                // The last vertex reached from v is a far end of its part
+                int tail = bfs(v, neighbors, placed.clone(), scratch, 0);
+                size = bfs(scratch[tail - 1], neighbors, placed, order, size);
+            }
+        }
+        return order;
+    }
+
+    // Breadth first search appending the unvisited vertices to order, returns the new size
+    private static int bfs(int root, ArrayList<TreeSet<Integer>> neighbors, boolean[] visited,
+            int[] order, int size){
+        int head = size;
+        int tail = size;
+        order[tail++] = root;
+        visited[root] = true;
+        ArrayList<Integer> next = new ArrayList<>();
+        final ArrayList<TreeSet<Integer>> n = neighbors;
+        Comparator<Integer> byDegree = new Comparator<Integer>(){
+            @Override
+            public int compare(Integer a, Integer b){
+                return Integer.compare(n.get(a).size(), n.get(b).size());
+            }
+        };
+        while(head < tail){
+            int v = order[head++];
+            next.clear();
+            for(int u:neighbors.get(v)){
+                if(!visited[u]){
+                    visited[u] = true;
+                    next.add(u);
+                }
+            }
+            Collections.sort(next, byDegree);
+            for(int u:next){
+                order[tail++] = u;
+            }
+        }
+        return tail;
+    }
+}
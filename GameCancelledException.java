@@ -0,0 +1,16 @@
+/**
+ * Thrown inside a game whose CancellationToken was cancelled. It carries
+ * no stack trace, the harness only needs to know that the game stopped.
+ * @author joar
+ */
+public final class GameCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     */
+    public GameCancelledException(){
+        super("Game cancelled", null, false, false);
+    }
+}
@@ -0,0 +1,187 @@
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Command line options shared by PGMS and the HeadlessRunner. Parsing
+ * them needs no AWT, so the headless path never loads the GUI classes.
+ * <p>
+ * A strategy is given as its class name, optionally followed by public
+ * fields to set, as in OurStrategy:goodGuessing=false,lookaheadCandidates=1.
+ * Giving more than one strategy plays a Tournament.
+ * @author joar
+ */
+public final class GameOptions {
+
+    /**
+     * Strategy played when none is given
+     */
+    public static final String DEFAULT_STRATEGY = "OurStrategy";
+
+    public String strategyName = DEFAULT_STRATEGY; // The last strategy given
+    public ArrayList<String> strategies = new ArrayList<>(); // All strategies given, in order
+    public String gameName = "beginner";
+    public int mines = 10; // Beginner game
+    public int rows = 8;
+    public int columns = 8;
+    public int tries = 1; // Number of games
+    public int threads = 0; // Worker threads, 0 to play on the calling thread
+    public boolean virtual = false; // Play every game on its own virtual thread
+    public int report = 1; // Seconds between summaries, 0 for only the final one
+    public boolean verbose = false; // Keep strategy messages with more than one game
+    public String export = null; // File for the counts and histograms, .json or .csv
+    public long seed = new Random().nextLong(); // Game n is played on the board of seed + n
+    public long timeout = 0; // Milliseconds per game before it is cancelled, 0 for no limit
+    public String log = null; // Append-only results log, a run with an existing log resumes it
+    public double precision = 0; // Stop once the 95% interval is within this of its center, 0 to play all
+
+    /**
+     * Parses the arguments, see PGMS.main.
+     * @param args program arguments
+     * @return the options, or null after printing the usage if the arguments are bad
+     */
+    public static GameOptions parse(String[] args){
+        GameOptions o = new GameOptions();
+        try{
+            for(int i = 0; i < args.length; i++){
+                if(args[i].equals("-b")){
+                    o.level("beginner", 10, 8, 8);
+                }else if(args[i].equals("-i")){
+                    o.level("intermediate", 40, 13, 15);
+                }else if(args[i].equals("-e")){
+                    o.level("expert", 99, 16, 30);
+                }else if(args[i].equals("-s")){
+                    o.strategyName = value(args, ++i, "strategy");
+                    o.strategies.add(o.strategyName);
+                }else if(args[i].equals("-n")){
+                    o.tries = Math.max(1, number(args, ++i, "number of games"));
+                }else if(args[i].equals("-threads")){
+                    o.threads = Math.max(1, number(args, ++i, "number of threads"));
+                }else if(args[i].equals("-virtual")){
+                    o.virtual = true;
+                    o.threads = Math.max(o.threads, 1);
+                }else if(args[i].equals("-report")){
+                    o.report = Math.max(0, number(args, ++i, "report interval"));
+                }else if(args[i].equals("-verbose")){
+                    o.verbose = true;
+                }else if(args[i].equals("-seed")){
+                    o.seed = longNumber(args, ++i, "seed");
+                }else if(args[i].equals("-timeout")){
+                    o.timeout = Math.max(0, longNumber(args, ++i, "timeout"));
+                }else if(args[i].equals("-precision")){
+                    o.precision = fraction(args, ++i, "precision");
+                }else if(args[i].equals("-log")){
+                    o.log = value(args, ++i, "log file");
+                }else if(args[i].equals("-export")){
+                    o.export = value(args, ++i, "export file");
+                }else{
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            usage();
+            return null;
+        }
+        if(o.strategies.isEmpty()){
+            o.strategies.add(o.strategyName);
+        }
+        return o;
+    }
+
+    /**
+     * Creates a strategy and sets the fields given with it.
+     * @param config class name, then optionally : and field=value pairs separated by ,
+     * @return the strategy
+     * @throws ReflectiveOperationException if there is no such strategy or field
+     * @throws IllegalArgumentException if a value does not fit its field
+     */
+    public static Strategy newStrategy(String config) throws ReflectiveOperationException{
+        int colon = config.indexOf(':');
+        String className = colon < 0 ? config : config.substring(0, colon);
+        Strategy s = (Strategy)Class.forName(className).getDeclaredConstructor().newInstance();
+        if(colon < 0){
+            return s;
+        }
+        for(String setting:config.substring(colon + 1).split(",")){
+            int eq = setting.indexOf('=');
+            if(eq < 0){
+                throw new IllegalArgumentException("Bad setting " + setting + " in " + config);
+            }
+            Field field = s.getClass().getField(setting.substring(0, eq).trim());
+            String value = setting.substring(eq + 1).trim();
+            Class<?> type = field.getType();
+            if(type == boolean.class){
+                field.setBoolean(s, Boolean.parseBoolean(value));
+            }else if(type == int.class){
+                field.setInt(s, Integer.parseInt(value));
+            }else if(type == long.class){
+                field.setLong(s, Long.parseLong(value));
+            }else if(type == double.class){
+                field.setDouble(s, Double.parseDouble(value));
+            }else if(type == String.class){
+                field.set(s, value);
+            }else{
+                throw new IllegalArgumentException("Cannot set " + field.getName() + " from the command line");
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Prints the options.
+     */
+    public static void usage(){
+        System.out.println("Usage: java PGMS [-b] [-i] [-e]"
+            + " [-s strategy_name] [-n number_of_games]"
+            + " [-threads number_of_threads] [-virtual]"
+            + " [-report seconds] [-verbose] [-export file.csv|file.json]"
+            + " [-seed seed] [-timeout milliseconds] [-precision fraction] [-log file]");
+        System.out.println("Strategy:     class_name[:field=value,...], more than one -s plays a tournament");
+        System.out.println("Beginner:     -b");
+        System.out.println("Intermediate: -i");
+        System.out.println("Expert:       -e");
+    }
+
+    private void level(String name, int mines, int rows, int columns){
+        gameName = name;
+        this.mines = mines;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    private static String value(String[] args, int i, String what){
+        if(i >= args.length){
+            throw new IllegalArgumentException("Missing " + what);
+        }
+        return args[i];
+    }
+
+    private static double fraction(String[] args, int i, String what){
+        try{
+            double value = Double.parseDouble(value(args, i, what));
+            if(!(value >= 0 && value < 1)){
+                throw new IllegalArgumentException("Bad " + what);
+            }
+            return value;
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("Bad " + what);
+        }
+    }
+
+    private static long longNumber(String[] args, int i, String what){
+        try{
+            return Long.parseLong(value(args, i, what));
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("Bad " + what);
+        }
+    }
+
+    private static int number(String[] args, int i, String what){
+        try{
+            return Integer.parseInt(value(args, i, what));
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("Bad " + what);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.*;
+
+/**
+ * Scores guess candidates by what probing them would reveal. For a candidate
+ * that turns out safe, every number it could show is tried as an extra
+ * constraint over its unprobed neighbors, and the LinearDeducer counts the
+ * cells that would then be forced safe. The expected count, weighted by the
+ * number of fringe solutions that show each number, is the progress of the
+ * candidate. Only the part of the fringe connected to the candidate and its
+ * neighbors is counted, the rest weighs every number alike.
+ * <p>
+ * Candidates are scored one after the other on the calling thread, so every
+ * game gets the whole of its own deadline however many games run at once.
+ * Whatever is not done by the deadline, or could not be counted, is left
+ * unscored. The numbers are not probed with the CdclSolver, although its
+ * assumptions would let one solver serve them all: the weights need the
+ * number of solutions showing each number, which the FrontierCounter gives
+ * and a SAT solver does not, and the solver would need a call per neighbor
+ * cell and number where the LinearDeducer needs one per number.
+ * @author joar
+ */
+public final class GuessEvaluator {
+
+    private final int nVars;
+    private final int[][] constraints;
+    private final int[] sums;
+    private final int maxMines;
+    private final int[][] constraintsOf; // constraint indices of each variable
+
+    /**
+     * Takes a snapshot of the fringe.
+     * @param nVars number of variables
+     * @param constraints variable indices of each constraint, not modified
+     * @param sums sum of each constraint, not modified
+     * @param maxMines max number of mines among the variables
+     */
+    public GuessEvaluator(int nVars, int[][] constraints, int[] sums, int maxMines){
+        this.nVars = nVars;
+        this.constraints = constraints;
+        this.sums = sums;
+        this.maxMines = maxMines;
+        int[] count = new int[nVars];
+        for(int[] vars:constraints){
+            for(int u:vars){
+                count[u]++;
+            }
+        }
+        constraintsOf = new int[nVars][];
+        for(int u = 0; u < nVars; u++){
+            constraintsOf[u] = new int[count[u]];
+            count[u] = 0;
+        }
+        for(int c = 0; c < constraints.length; c++){
+            for(int u:constraints[c]){
+                constraintsOf[u][count[u]++] = c;
+            }
+        }
+    }
+
+    /**
+     * Scores candidates in order until the deadline.
+     * @param candidates variable index of each candidate
+     * @param neighbors variable indices of the unprobed neighbors of each candidate,
+     * indices from nVars up are cells outside the fringe
+     * @param deadline value of System.nanoTime at which to give up
+     * @param token token of the game, null if it can't be cancelled
+     * @return expected number of cells forced safe by each candidate, NaN if not scored
+     * @throws GameCancelledException if the token is cancelled
+     */
+    public double[] progress(int[] candidates, int[][] neighbors, long deadline,
+            CancellationToken token){
+        double[] progress = new double[candidates.length];
+        for(int i = 0; i < progress.length; i++){
+            progress[i] = System.nanoTime() - deadline > 0 ? Double.NaN
+                : progress(candidates[i], neighbors[i], deadline, token);
+        }
+        return progress;
+    }
+
+    /**
+     * Scores one candidate.
+     * @param v variable index of the candidate
+     * @param around variable indices of its unprobed neighbors
+     * @param deadline value of System.nanoTime at which to give up
+     * @param token token of the game, null if it can't be cancelled
+     * @return expected number of cells forced safe, NaN if the deadline passed or
+     * the number of solutions showing a number could not be counted
+     * @throws GameCancelledException if the token is cancelled
+     */
+    public double progress(int v, int[] around, long deadline, CancellationToken token){
+        if(around.length == 0){
+            return 0; // The number it shows is known already
+        }
+        int size = nVars;
+        for(int u:around){
+            size = Math.max(size, u + 1);
+        }
+
+        // Only the constraints connected to the candidate and its neighbors change
+        int[] local = new int[size];
+        Arrays.fill(local, -1);
+        boolean[] used = new boolean[constraints.length];
+        int[] queue = new int[size];
+        int n = 0;
+        local[v] = n;
+        queue[n++] = v;
+        for(int u:around){
+            if(local[u] == -1){
+                local[u] = n;
+                queue[n++] = u;
+            }
+        }
+        ArrayList<int[]> cons = new ArrayList<>();
+        ArrayList<Integer> s = new ArrayList<>();
+        for(int head = 0; head < n; head++){
+            int u = queue[head];
+            if(u >= nVars){
+                continue; // Outside the fringe, in no constraint
+            }
+            for(int c:constraintsOf[u]){
+                if(used[c]){
+                    continue;
+                }
+                used[c] = true;
+                int[] vars = new int[constraints[c].length];
+                for(int j = 0; j < vars.length; j++){
+                    int w = constraints[c][j];
+                    if(local[w] == -1){
+                        local[w] = n;
+                        queue[n++] = w;
+                    }
+                    vars[j] = local[w];
+                }
+                cons.add(vars);
+                s.add(sums[c]);
+            }
+        }
+        int[] shownVars = new int[around.length];
+        for(int j = 0; j < around.length; j++){
+            shownVars[j] = local[around[j]];
+        }
+        int nCons = cons.size();
+        cons.add(new int[]{local[v]});
+        s.add(0); // The candidate is safe
+        cons.add(shownVars);
+        s.add(0);
+        int[][] c = cons.toArray(new int[0][]);
+        int[] sum = new int[c.length];
+        for(int j = 0; j < nCons + 1; j++){
+            sum[j] = s.get(j);
+        }
+
+        double expected = 0;
+        double total = 0;
+        for(int shown = 0; shown <= around.length; shown++){
+            if(System.nanoTime() - deadline > 0){
+                return Double.NaN;
+            }
+            sum[nCons + 1] = shown;
+            FrontierCounter counter = FrontierCounter.count(n, c, sum, maxMines, 0, deadline, token);
+            if(counter == null){
+                return Double.NaN; // Without the weights the score would be skewed
+            }
+            double weight = 0;
+            for(int k = 0; k <= counter.maxMines(); k++){
+                weight += counter.solutions(k);
+            }
+            if(weight == 0){
+                continue; // The number can not show up
+            }
+            int[] forced = LinearDeducer.deduce(n, c, sum);
+            int safe = 0;
+            for(int u = 0; u < n; u++){
+                if(u != local[v] && forced[u] == 0){
+                    safe++;
+                }
+            }
+            expected += weight*safe;
+            total += weight;
+        }
+        return total == 0 ? 0 : expected/total;
+    }
+}
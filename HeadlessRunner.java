@@ -0,0 +1,99 @@
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Plays games without any GUI. Neither this class nor anything it uses
+ * touches AWT, so it starts quickly and runs on headless machines. PGMS
+ * hands its batch runs over to it.
+ * @author joar
+ */
+public final class HeadlessRunner {
+
+    private HeadlessRunner(){ }
+
+    /**
+     * Entry point, takes the same arguments as PGMS.
+     * @param args program arguments
+     */
+    public static void main(String[] args){
+        GameOptions o = GameOptions.parse(args);
+        if(o != null){
+            run(o);
+        }
+    }
+
+    /**
+     * Plays the games given by the options and prints their summary.
+     * @param o options
+     */
+    public static void run(GameOptions o){
+        if((o.tries > 1 || o.strategies.size() > 1) && !o.verbose){
+            LogSink.setDefault(LogSink.NONE); // Strategies created from here on are quiet
+        }
+        if(o.strategies.size() > 1){
+            Tournament.run(o);
+            return;
+        }
+        ProgressReporter reporter = new ProgressReporter(System.out, 1000L*o.report, o.export != null);
+        ResultsLog log = null;
+        if(o.log != null){
+            try{
+                log = ResultsLog.open(o.log, o.strategyName, o.mines, o.rows, o.columns, o.seed,
+                    reporter.recorder());
+            }catch(IOException e){
+                System.out.println("Cannot open results log: " + e.getMessage());
+                return;
+            }
+            o.seed = log.seed();
+            if(log.restored() > 0){
+                System.out.println("Resuming " + o.log + " after " + log.restored() + " games");
+            }
+            reporter.setLog(log);
+        }
+        System.out.println("Playing " + o.tries + " " + o.gameName + " games using strategy "
+            + o.strategyName + (o.threads > 0 ? " on " + o.threads + " threads" : "")
+            + ", seed " + o.seed);
+
+        try{
+            if(o.threads > 0){
+                new BatchRunner(o.strategyName, o.mines, o.rows, o.columns, o.seed, o.timeout)
+                    .run(o.tries, o.threads, o.virtual, o.precision, reporter);
+            }else{
+                Strategy s = GameOptions.newStrategy(o.strategyName);
+                ProgressReporter.Recorder recorder = reporter.recorder();
+                recorder.listenTo(s);
+                for(int n = 0; n < o.tries && !reporter.precise(o.precision); n++){
+                    BatchRunner.playGame(s, o.mines, o.rows, o.columns, o.seed + n, o.timeout, recorder,
+                        reporter.messages());
+                }
+            }
+        }catch(ReflectiveOperationException | IllegalArgumentException e){
+            System.out.println("Cannot create strategy " + o.strategyName + ": " + e);
+            GameOptions.usage();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt(); // Report what was played
+        }finally{
+            reporter.close();
+            if(log != null){
+                try{
+                    log.close();
+                }catch(IOException e){
+                    System.out.println("Cannot write results log: " + e.getMessage());
+                }
+            }
+        }
+        if(o.precision > 0){
+            double[] interval = reporter.winInterval();
+            System.out.printf(Locale.ROOT, "Win rate %.2f%% - %.2f%% (95%%) after %d of at most %d games%n",
+                100*interval[0], 100*interval[1], reporter.played(), o.tries);
+        }
+        if(o.export != null){
+            try{
+                reporter.export(new File(o.export));
+                System.out.println("Results written to " + o.export);
+            }catch(IOException e){
+                System.out.println(e.toString());
+            }
+        }
+    }
+}
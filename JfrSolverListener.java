@@ -0,0 +1,93 @@
+import jdk.jfr.*;
+
+/**
+ * Emits the solver counters as JFR events, minesweep.Move for every
+ * analysis and minesweep.Game for every game, so they show up next to the
+ * GC and JIT events of a recording:
+ * <pre>
+ * java -Dminesweep.jfr=true -XX:StartFlightRecording=filename=games.jfr HeadlessRunner -e -n 100
+ * jfr print --events minesweep.Move games.jfr
+ * </pre>
+ * OurStrategy only loads this class, and with it jdk.jfr, when the property
+ * minesweep.jfr is true, so runs without it pay neither the class loading
+ * nor the timing of the moves.
+ * @author joar
+ */
+public final class JfrSolverListener implements SolverListener {
+
+    @Override
+    public void move(Move move){
+        MoveEvent event = new MoveEvent();
+        if(!event.shouldCommit()){
+            return;
+        }
+        event.nanos = move.nanos;
+        event.scanNanos = move.scanNanos;
+        event.fringe = move.fringe;
+        event.constraints = move.constraints;
+        event.components = move.components;
+        event.nodesVisited = move.nodesVisited;
+        event.solutions = move.solutions;
+        event.deductions = move.deductions;
+        event.unscored = move.unscored;
+        event.stage = Move.STAGES[move.stage];
+        event.commit();
+    }
+
+    @Override
+    public void game(Game game){
+        GameEvent event = new GameEvent();
+        if(!event.shouldCommit()){
+            return;
+        }
+        event.rows = game.rows;
+        event.columns = game.columns;
+        event.mines = game.mines;
+        event.won = game.won;
+        event.moves = game.moves;
+        event.deductions = game.deductions;
+        event.guesses = game.guesses;
+        event.unscored = game.unscored;
+        event.nodesVisited = game.nodesVisited;
+        event.scanNanos = game.scanNanos;
+        event.nanos = game.nanos;
+        event.commit();
+    }
+
+    @Name("minesweep.Move")
+    @Label("Solver Move")
+    @Category("Minesweeper")
+    @Description("One analysis of the board by OurStrategy")
+    @StackTrace(false)
+    static final class MoveEvent extends Event {
+        @Label("Time") @Timespan(Timespan.NANOSECONDS) long nanos;
+        @Label("Scan Time") @Timespan(Timespan.NANOSECONDS) long scanNanos;
+        @Label("Fringe Cells") int fringe;
+        @Label("Constraints") int constraints;
+        @Label("Components") int components;
+        @Label("CSP Nodes") long nodesVisited;
+        @Label("Solutions") double solutions;
+        @Label("Deductions") int deductions;
+        @Label("Unscored Candidates") int unscored;
+        @Label("Stage") String stage;
+    }
+
+    @Name("minesweep.Game")
+    @Label("Solver Game")
+    @Category("Minesweeper")
+    @Description("One game played by OurStrategy")
+    @StackTrace(false)
+    static final class GameEvent extends Event {
+        @Label("Rows") int rows;
+        @Label("Columns") int columns;
+        @Label("Mines") int mines;
+        @Label("Won") boolean won;
+        @Label("Moves") int moves;
+        @Label("Deductions") int deductions;
+        @Label("Guesses") int guesses;
+        @Label("Unscored Candidates") int unscored;
+        @Label("CSP Nodes") long nodesVisited;
+        @Label("Scan Time") @Timespan(Timespan.NANOSECONDS) long scanNanos;
+        @Label("Time") @Timespan(Timespan.NANOSECONDS) long nanos;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Histogram of non negative longs in logarithmic buckets: every power of two
+ * is split into SUB_BUCKETS buckets, so a recorded value is known within
+ * 1/SUB_BUCKETS of itself whatever its size, in a fixed array of counts.
+ * Recording is not synchronized, give every thread its own histogram and
+ * add them together once the threads are done.
+ * @author joar
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // Buckets per power of two
+    private static final long MAX_VALUE = (1L << 62) - 1; // Larger values are recorded as this
+
+    private final long[] counts = new long[index(MAX_VALUE) + 1];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     * @param value the value
+     */
+    public void record(long value){
+        value = Math.max(0, Math.min(value, MAX_VALUE));
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     * @param other the histogram, not modified
+     */
+    public void add(LatencyHistogram other){
+        for(int i = 0; i < counts.length; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long count(){
+        return count;
+    }
+
+    /**
+     * @return smallest value recorded, 0 if none
+     */
+    public long min(){
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return largest value recorded, 0 if none
+     */
+    public long max(){
+        return max;
+    }
+
+    /**
+     * @return mean of the values recorded, 0 if none
+     */
+    public double mean(){
+        return count == 0 ? 0 : (double)sum/count;
+    }
+
+    /**
+     * Upper bound of the value at a percentile.
+     * @param p the percentile, 0 to 100
+     * @return the highest value of the bucket holding the percentile, at most max
+     */
+    public long percentile(double p){
+        long rank = Math.max(1, (long)Math.ceil(p/100*count));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return number of buckets
+     */
+    public int buckets(){
+        return counts.length;
+    }
+
+    /**
+     * @param i bucket index
+     * @return number of values recorded in the bucket
+     */
+    public long bucketCount(int i){
+        return counts[i];
+    }
+
+    /**
+     * @param i bucket index
+     * @return lowest value of the bucket
+     */
+    public static long lowerBound(int i){
+        if(i < SUB_BUCKETS){
+            return i;
+        }
+        int shift = (i >> SUB_BITS) - 1;
+        return (long)(SUB_BUCKETS + (i & SUB_BUCKETS - 1)) << shift;
+    }
+
+    /**
+     * @param i bucket index
+     * @return highest value of the bucket
+     */
+    public static long upperBound(int i){
+        if(i < SUB_BUCKETS){
+            return i;
+        }
+        return lowerBound(i) + (1L << (i >> SUB_BITS) - 1) - 1;
+    }
+
+    // Values below SUB_BUCKETS have a bucket each, above that the top SUB_BITS + 1 bits decide
+    private static int index(long value){
+        if(value < SUB_BUCKETS){
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1 << SUB_BITS) + (int)(value >>> shift & SUB_BUCKETS - 1);
+    }
+}
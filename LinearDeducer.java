@@ -0,0 +1,240 @@
+/**
+ * Finds forced cells of a fringe in polynomial time. The constraints are
+ * row reduced with fraction free integer elimination and every reduced row
+ * is checked against the bounds its 0/1 variables allow: a variable whose
+ * value would put the row out of reach of its sum is forced to the other
+ * value. Forced variables are substituted and the reduction is repeated
+ * until nothing new is found. Rows keep only their non zero entries,
+ * sorted by column, next to a packed long[] bit set of those columns for
+ * the pivot search, so sparse fringe rows cost what they hold and not the
+ * width of the fringe. The arithmetic is overflow checked, coefficients
+ * too large for a long end the deduction with the cells found so far.
+ * @author joar
+ */
+public final class LinearDeducer {
+
+    /**
+     * Unknown value in the result of deduce
+     */
+    public static final int UNKNOWN = -1;
+
+    private LinearDeducer(){ }
+
+    /**
+     * Deduces some cells forced by linear combinations of the constraints.
+     * @param nVars number of variables
+     * @param constraints variable indices of each constraint
+     * @param sums sum of each constraint
+     * @return for each variable 0 if safe, 1 if mine or UNKNOWN
+     */
+    public static int[] deduce(int nVars, int[][] constraints, int[] sums){
+        int[] forced = new int[nVars];
+        java.util.Arrays.fill(forced, UNKNOWN);
+        int words = (nVars + 63) >>> 6;
+        Row[] rows = new Row[constraints.length];
+        for(int c = 0; c < rows.length; c++){
+            rows[c] = new Row(words, constraints[c].length);
+        }
+        boolean found = true;
+        while(found){
+            // Rows with the forced variables substituted
+            int nRows = 0;
+            for(int c = 0; c < constraints.length; c++){
+                if(rows[nRows].set(constraints[c], sums[c], forced)){
+                    nRows++;
+                }
+            }
+            found = false;
+            try{
+                for(int r = 0; r < nRows; r++){
+                    found |= bound(rows[r], forced);
+                }
+                if(found){
+                    continue;
+                }
+                eliminate(rows, nRows, nVars);
+                for(int r = 0; r < nRows; r++){
+                    found |= bound(rows[r], forced);
+                }
+            }catch(ArithmeticException e){
+                return forced; // Coefficients out of range, what was forced before still holds
+            }
+        }
+        return forced;
+    }
+
+    // Reduces the rows to reduced row echelon form, scaled to integers
+    private static void eliminate(Row[] rows, int nRows, int nVars){
+        if(nRows == 0){
+            return;
+        }
+        Row scratch = new Row(rows[0].support.length, 0);
+        int pivotRow = 0;
+        for(int col = 0; col < nVars && pivotRow < nRows; col++){
+            int word = col >>> 6;
+            long bit = 1L << col;
+            int r = pivotRow;
+            while(r < nRows && (rows[r].support[word] & bit) == 0){
+                r++;
+            }
+            if(r == nRows){
+                continue;
+            }
+            Row pivot = rows[r];
+            rows[r] = rows[pivotRow];
+            rows[pivotRow] = pivot;
+            long p = pivot.get(col);
+            for(int other = 0; other < nRows; other++){
+                if(other == pivotRow || (rows[other].support[word] & bit) == 0){
+                    continue;
+                }
+                // Scale by the smallest multipliers that cancel the column
+                long a = rows[other].get(col);
+                long g = gcd(Math.abs(p), Math.abs(a));
+                scratch.combine(rows[other], p/g, pivot, a/g);
+                scratch.normalize();
+                Row t = rows[other];
+                rows[other] = scratch;
+                scratch = t;
+            }
+            pivotRow++;
+        }
+    }
+
+    /*
+     * Forces every unknown variable of the row whose other value would make the
+     * row unsatisfiable by 0/1 values. Returns true if something was forced.
+     */
+    private static boolean bound(Row row, int[] forced){
+        long min = 0;
+        long max = 0;
+        for(int i = 0; i < row.size; i++){
+            long c = row.values[i];
+            if(c < 0){
+                min = Math.addExact(min, c);
+            }else{
+                max = Math.addExact(max, c);
+            }
+        }
+        long sum = row.rhs;
+        if(sum < min || sum > max){
+            return false; // Contradicting constraints, nothing can be trusted
+        }
+        boolean found = false;
+        for(int i = 0; i < row.size; i++){
+            int j = row.columns[i];
+            long c = row.values[i];
+            if(forced[j] != UNKNOWN){
+                continue;
+            }
+            long minRest = min - Math.min(c, 0);
+            long maxRest = max - Math.max(c, 0);
+            boolean zero = minRest <= sum && sum <= maxRest;
+            boolean one = minRest + c <= sum && sum <= maxRest + c;
+            if(zero != one){
+                forced[j] = one ? 1 : 0;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    private static long gcd(long a, long b){
+        while(b != 0){
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /*
+     * Sparse row: the non zero coefficients in column order and the bit set
+     * of their columns.
+     */
+    private static final class Row {
+
+        final long[] support;
+        int[] columns;
+        long[] values;
+        int size;
+        long rhs;
+
+        Row(int words, int capacity){
+            support = new long[words];
+            columns = new int[capacity];
+            values = new long[capacity];
+        }
+
+        // Sets the row to a constraint with the forced variables substituted, false if none is left
+        boolean set(int[] vars, int sum, int[] forced){
+            java.util.Arrays.fill(support, 0);
+            size = 0;
+            rhs = sum;
+            reserve(vars.length);
+            for(int v:vars){
+                if(forced[v] != UNKNOWN){
+                    rhs -= forced[v];
+                }else if((support[v >>> 6] & 1L << v) == 0){
+                    support[v >>> 6] |= 1L << v;
+                    columns[size++] = v;
+                }
+            }
+            java.util.Arrays.sort(columns, 0, size);
+            java.util.Arrays.fill(values, 0, size, 1);
+            return size > 0;
+        }
+
+        long get(int col){
+            return values[java.util.Arrays.binarySearch(columns, 0, size, col)];
+        }
+
+        // Sets the row to row*p - pivot*a
+        void combine(Row row, long p, Row pivot, long a){
+            reserve(row.size + pivot.size);
+            java.util.Arrays.fill(support, 0);
+            size = 0;
+            int i = 0;
+            int j = 0;
+            while(i < row.size || j < pivot.size){
+                int ci = i < row.size ? row.columns[i] : Integer.MAX_VALUE;
+                int cj = j < pivot.size ? pivot.columns[j] : Integer.MAX_VALUE;
+                int col = Math.min(ci, cj);
+                long v = 0;
+                if(ci == col){
+                    v = Math.multiplyExact(row.values[i++], p);
+                }
+                if(cj == col){
+                    v = Math.subtractExact(v, Math.multiplyExact(pivot.values[j++], a));
+                }
+                if(v != 0){
+                    support[col >>> 6] |= 1L << col;
+                    columns[size] = col;
+                    values[size++] = v;
+                }
+            }
+            rhs = Math.subtractExact(Math.multiplyExact(row.rhs, p), Math.multiplyExact(pivot.rhs, a));
+        }
+
+        // Divides the row by the gcd of its entries
+        void normalize(){
+            long g = Math.abs(rhs);
+            for(int i = 0; i < size && g != 1; i++){
+                g = gcd(g, Math.abs(values[i]));
+            }
+            if(g > 1){
+                for(int i = 0; i < size; i++){
+                    values[i] /= g;
+                }
+                rhs /= g;
+            }
+        }
+
+        private void reserve(int capacity){
+            if(columns.length < capacity){
+                columns = new int[capacity];
+                values = new long[capacity];
+            }
+        }
+    }
+}
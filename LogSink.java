@@ -0,0 +1,65 @@
+/**
+ * Destination of the progress messages of a strategy. Callers check
+ * enabled before building a message, so a disabled sink costs one call
+ * that the JIT turns into a constant, and no strings are built at all.
+ * @author joar
+ */
+public abstract class LogSink {
+
+    /**
+     * Sink that drops everything
+     */
+    public static final LogSink NONE = new LogSink(){
+        @Override
+        public boolean enabled(){
+            return false;
+        }
+
+        @Override
+        public void log(String message){
+        }
+    };
+
+    /**
+     * Sink that prints every message on its own line of standard output
+     */
+    public static final LogSink CONSOLE = new LogSink(){
+        @Override
+        public boolean enabled(){
+            return true;
+        }
+
+        @Override
+        public void log(String message){
+            System.out.println(message);
+        }
+    };
+
+    private static volatile LogSink defaultSink = CONSOLE;
+
+    /**
+     * @return the sink new strategies log to
+     */
+    public static LogSink defaultSink(){
+        return defaultSink;
+    }
+
+    /**
+     * Sets the sink new strategies log to, batch runs use NONE.
+     * @param sink the sink
+     */
+    public static void setDefault(LogSink sink){
+        defaultSink = sink;
+    }
+
+    /**
+     * @return true if log does anything, check before building a message
+     */
+    public abstract boolean enabled();
+
+    /**
+     * Logs a message.
+     * @param message the message
+     */
+    public abstract void log(String message);
+}
@@ -0,0 +1,267 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+/**
+ * End to end benchmark: plays fixed sets of seeded games at each level and
+ * on large custom boards through Strategy.play, and measures games per
+ * second, the time per game and per move and the peak heap. A move is the
+ * time from one probe or mark to the next, so it includes the analysis
+ * that found it. The results are compared with a baseline stored by an
+ * earlier run on the same machine and any metric worse than the baseline by
+ * more than the tolerance fails the run. The baseline is machine specific
+ * and kept out of git, the first run or -update records it.
+ * Each suite is played a few rounds on the same seeds and the best value
+ * of each compared metric is kept, which takes out most of the noise of a busy
+ * machine.
+ * <p>
+ * Usage: java MacroBenchmark [-s strategy] [-baseline file] [-update]
+ * [-tolerance fraction] [-scale factor] [-rounds n]
+ * @author joar
+ */
+public final class MacroBenchmark {
+
+    // name, mines, rows, columns, games, warmup games
+    private static final Object[][] SUITES = {
+        {"beginner", 10, 8, 8, 1000, 200},
+        {"intermediate", 40, 13, 15, 400, 80},
+        {"expert", 99, 16, 30, 200, 40},
+        {"large", 300, 40, 50, 50, 10},
+        {"huge", 1200, 80, 100, 20, 4}
+    };
+
+    // Metrics compared with the baseline, the max times and the median move
+    // are left out as they are mostly jit and gc noise
+    private static final Set<String> HIGHER_IS_BETTER = new HashSet<>(Arrays.asList(
+        "gamesPerSecond"));
+    private static final Set<String> LOWER_IS_BETTER = new HashSet<>(Arrays.asList(
+        "gameMillis.p50", "gameMillis.p99", "moveMicros.p99", "peakHeapMB"));
+
+    private MacroBenchmark(){ }
+
+    /**
+     * Runs the suites.
+     * @param args see the class comment
+     * @throws Exception if the strategy can not be created or the baseline not read
+     */
+    public static void main(String[] args) throws Exception{
+        String strategyName = GameOptions.DEFAULT_STRATEGY;
+        String baselineFile = "macro-baseline.properties";
+        boolean update = false;
+        double tolerance = 0.25;
+        double scale = 1.0;
+        int rounds = 3;
+        try{
+            for(int i = 0; i < args.length; i++){
+                if(args[i].equals("-s")){
+                    strategyName = value(args, ++i, "strategy");
+                }else if(args[i].equals("-baseline")){
+                    baselineFile = value(args, ++i, "baseline file");
+                }else if(args[i].equals("-update")){
+                    update = true;
+                }else if(args[i].equals("-tolerance")){
+                    tolerance = Double.parseDouble(value(args, ++i, "tolerance"));
+                }else if(args[i].equals("-scale")){
+                    scale = Double.parseDouble(value(args, ++i, "scale"));
+                }else if(args[i].equals("-rounds")){
+                    rounds = Integer.parseInt(value(args, ++i, "number of rounds"));
+                }else{
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }catch(IllegalArgumentException e){
+            // NumberFormatException included
+            System.out.println(e.getMessage());
+            System.out.println("Usage: java MacroBenchmark [-s strategy] [-baseline file]"
+                + " [-update] [-tolerance fraction] [-scale factor] [-rounds n]");
+            return;
+        }
+
+        LogSink.setDefault(LogSink.NONE);
+        Strategy s = GameOptions.newStrategy(strategyName);
+        Properties results = new Properties();
+        for(Object[] suite:SUITES){
+            String name = (String)suite[0];
+            int games = Math.max(1, (int)Math.round((Integer)suite[4]*scale));
+            int warmup = (int)Math.round((Integer)suite[5]*scale);
+            for(int round = 0; round < rounds; round++){
+                Properties played = new Properties();
+                run(s, name, (Integer)suite[1], (Integer)suite[2], (Integer)suite[3],
+                    games, round == 0 ? warmup : 0, played);
+                keepBest(results, played);
+            }
+        }
+
+        File file = new File(baselineFile);
+        if(update || !file.exists()){
+            try(OutputStream out = new FileOutputStream(file)){
+                results.store(out, "MacroBenchmark baseline of " + strategyName + ", "
+                    + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                    + ", " + Runtime.getRuntime().availableProcessors() + " cpus");
+            }
+            System.out.println("Baseline written to " + file + ", later runs compare against it");
+            return;
+        }
+
+        Properties baseline = new Properties();
+        try(InputStream in = new FileInputStream(file)){
+            baseline.load(in);
+        }
+        int regressions = compare(baseline, results, tolerance);
+        if(regressions > 0){
+            System.out.println(regressions + " metrics regressed by more than "
+                + Math.round(100*tolerance) + "% against " + file);
+            System.exit(1);
+        }
+        System.out.println("No regressions against " + file);
+    }
+
+    private static void run(Strategy s, String name, int mines, int rows, int columns,
+            int games, int warmup, Properties results){
+        for(int n = 0; n < warmup; n++){
+            s.play(new MineMap(mines, rows, columns, -1 - n)); // Seeds not measured below
+        }
+        System.gc();
+        for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()){
+            pool.resetPeakUsage();
+        }
+
+        long[] gameNanos = new long[games];
+        TimedMap timed = new TimedMap();
+        int wins = 0;
+        long start = System.nanoTime();
+        for(int n = 0; n < games; n++){
+            timed.reset(new MineMap(mines, rows, columns, n));
+            long before = System.nanoTime();
+            s.play(timed);
+            gameNanos[n] = System.nanoTime() - before;
+            if(timed.won()){
+                wins++;
+            }
+        }
+        double seconds = (System.nanoTime() - start)/1e9;
+
+        long peakHeap = 0;
+        for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        long[] moveNanos = Arrays.copyOf(timed.moveNanos, timed.nrMoves);
+        Arrays.sort(gameNanos);
+        Arrays.sort(moveNanos);
+        put(results, name, "gamesPerSecond", games/seconds);
+        put(results, name, "gameMillis.p50", percentile(gameNanos, 0.50)/1e6);
+        put(results, name, "gameMillis.p99", percentile(gameNanos, 0.99)/1e6);
+        put(results, name, "gameMillis.max", gameNanos[games - 1]/1e6);
+        put(results, name, "moveMicros.p50", percentile(moveNanos, 0.50)/1e3);
+        put(results, name, "moveMicros.p99", percentile(moveNanos, 0.99)/1e3);
+        put(results, name, "moveMicros.max", moveNanos.length == 0 ? 0 : moveNanos[moveNanos.length - 1]/1e3);
+        put(results, name, "peakHeapMB", peakHeap/(1024.0*1024.0));
+        results.setProperty(name + ".wins", Integer.toString(wins));
+        results.setProperty(name + ".games", Integer.toString(games));
+        System.out.printf("%-13s %5d games %8.1f games/s  game p50 %8.2f p99 %8.2f max %8.2f ms"
+            + "  move p50 %8.1f p99 %9.1f max %10.1f us  heap %6.1f MB  %d wins%n",
+            name, games, games/seconds,
+            percentile(gameNanos, 0.50)/1e6, percentile(gameNanos, 0.99)/1e6,
+            gameNanos[games - 1]/1e6, percentile(moveNanos, 0.50)/1e3,
+            percentile(moveNanos, 0.99)/1e3,
+            moveNanos.length == 0 ? 0 : moveNanos[moveNanos.length - 1]/1e3,
+            peakHeap/(1024.0*1024.0), wins);
+    }
+
+    // Number of metrics worse than the baseline by more than the tolerance
+    private static int compare(Properties baseline, Properties results, double tolerance){
+        int regressions = 0;
+        for(String key:new TreeSet<>(results.stringPropertyNames())){
+            String metric = key.substring(key.indexOf('.') + 1);
+            String stored = baseline.getProperty(key);
+            if(stored == null || !HIGHER_IS_BETTER.contains(metric)
+                    && !LOWER_IS_BETTER.contains(metric)){
+                continue;
+            }
+            double before = Double.parseDouble(stored);
+            double now = Double.parseDouble(results.getProperty(key));
+            boolean worse = HIGHER_IS_BETTER.contains(metric)
+                ? now < before*(1 - tolerance) : now > before*(1 + tolerance);
+            if(worse){
+                regressions++;
+                System.out.printf("REGRESSION %-30s %12.3f -> %12.3f%n", key, before, now);
+            }
+        }
+        return regressions;
+    }
+
+    private static void keepBest(Properties results, Properties played){
+        for(String key:played.stringPropertyNames()){
+            String metric = key.substring(key.indexOf('.') + 1);
+            String kept = results.getProperty(key);
+            double now = Double.parseDouble(played.getProperty(key));
+            if(kept == null || !LOWER_IS_BETTER.contains(metric) && !HIGHER_IS_BETTER.contains(metric)
+                    || HIGHER_IS_BETTER.contains(metric) && now > Double.parseDouble(kept)
+                    || LOWER_IS_BETTER.contains(metric) && now < Double.parseDouble(kept)){
+                results.setProperty(key, played.getProperty(key));
+            }
+        }
+    }
+
+    private static void put(Properties results, String suite, String metric, double value){
+        results.setProperty(suite + "." + metric, String.format(Locale.ROOT, "%.3f", value));
+    }
+
+    private static long percentile(long[] sorted, double p){
+        if(sorted.length == 0){
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int)Math.ceil(p*sorted.length) - 1)];
+    }
+
+    private static String value(String[] args, int i, String what){
+        if(i >= args.length){
+            throw new IllegalArgumentException("Missing " + what);
+        }
+        return args[i];
+    }
+
+    /*
+     * Map that records the time since the previous probe or mark at every
+     * probe or mark of the map it wraps.
+     */
+    private static final class TimedMap implements Map {
+
+        private Map m;
+        private long last;
+        long[] moveNanos = new long[1 << 12];
+        int nrMoves;
+
+        void reset(Map m){
+            this.m = m;
+            last = System.nanoTime();
+        }
+
+        private void move(){
+            long now = System.nanoTime();
+            if(nrMoves == moveNanos.length){
+                moveNanos = Arrays.copyOf(moveNanos, 2*nrMoves);
+            }
+            moveNanos[nrMoves++] = now - last;
+            last = now;
+        }
+
+        @Override public int probe(int x, int y){ move(); return m.probe(x, y); }
+        @Override public int mark(int x, int y){ move(); return m.mark(x, y); }
+        @Override public int unmark(int x, int y){ return m.unmark(x, y); }
+        @Override public int look(int x, int y){ return m.look(x, y); }
+        @Override public boolean won(){ return m.won(); }
+        @Override public boolean done(){ return m.done(); }
+        @Override public boolean probed(){ return m.probed(); }
+        @Override public int mines_minus_marks(){ return m.mines_minus_marks(); }
+        @Override public int rows(){ return m.rows(); }
+        @Override public int columns(){ return m.columns(); }
+        @Override public void display(){ m.display(); }
+        @Override public int pick(int n){ return m.pick(n); }
+    }
+}
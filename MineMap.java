@@ -18,6 +18,8 @@ the Free Software Foundation, 59 Temple Place - Suite 330,
 Boston, MA 02111-1307, USA.
 */
 
+import java.util.Random;
+
 /**
  * The class Map implements a mine map.  A strategy operates on a mine
  * map. By invoking the operations of probing and marking, the strategy
@@ -48,7 +50,12 @@ public class MineMap implements Map {
    */
   boolean unprobed_map[][];
 
-  private MineMap() { }
+  /* Each map has its own random source, so maps created
+   * on different threads do not contend for Math.random.
+   */
+  private final Random random;
+
+  private MineMap() { random = new Random(); }
 
   /**
    * Create a mine map.
@@ -58,6 +65,34 @@ public class MineMap implements Map {
    * @return 		a mine map
    */
   MineMap(int mines, int rows, int columns) {
+    this(mines, rows, columns, new Random());
+  }
+
+  /**
+   * Create a mine map with a reproducible layout.
+   * @param mines	number of mines in mine map
+   * @param rows        rows in map
+   * @param columns     columns in map
+   * @param seed        seed of the random source placing the mines,
+   *                    consecutive seeds give unrelated layouts
+   * @return 		a mine map
+   */
+  public MineMap(int mines, int rows, int columns, long seed) {
+    this(mines, rows, columns, new Random(mix(seed)));
+  }
+
+  /*
+   * The first values of java.util.Random for consecutive seeds are
+   * close, scramble the seed so runs can number their games.
+   */
+  private static long mix(long seed) {
+    seed = (seed ^ (seed >>> 30)) * 0xbf58476d1ce4e5b9L;
+    seed = (seed ^ (seed >>> 27)) * 0x94d049bb133111ebL;
+    return seed ^ (seed >>> 31);
+  }
+
+  private MineMap(int mines, int rows, int columns, Random random) {
+    this.random = random;
     mmm = mines;
     r = rows;
     c = columns;
@@ -109,13 +144,14 @@ public class MineMap implements Map {
   public int pick(int n) {
     if (n <= 0)
       throw new IllegalArgumentException("n must be positive");
-    int p = (int)Math.floor((double)n * Math.random());
+    int p = (int)Math.floor((double)n * random.nextDouble());
     return p >= n ? p - n : p;
   }
 
   private boolean victory = false;
   private boolean finished = false;
   private boolean probed = false;
+  private int moves = 0;		// Probes and marks that changed the board
 
   /**
    * Has this game been won?
@@ -143,6 +179,15 @@ public class MineMap implements Map {
     return true;
   }
 
+  /**
+   * Number of probes and marks made before the game finished.
+   * Moves out of bounds, on marked cells or on cells already
+   * probed or marked change nothing and are not counted.
+   */
+  public int moves() {
+    return moves;
+  }
+
   /**
    * Has this game had at least one successful probe.
    */
@@ -167,10 +212,12 @@ public class MineMap implements Map {
   public int probe(int x, int y) {
     if (finished)
       return look(x, y);
-    else if (x < 0 || x >= c || y < 0 || y >= r)
+    if (x < 0 || x >= c || y < 0 || y >= r)
       return OUT_OF_BOUNDS;
     else if (mark_map[y][x])
       return MARKED;
+    if (unprobed_map[y][x])
+      moves++;
     unprobed_map[y][x] = false;
     if (mine_map[y][x] < 0)
       finished = true;
@@ -221,11 +268,12 @@ public class MineMap implements Map {
   public int mark(int x, int y) {
     if (finished)
       return look(x, y);
-    else if (x < 0 || x >= c || y < 0 || y >= r)
+    if (x < 0 || x >= c || y < 0 || y >= r)
       return OUT_OF_BOUNDS;
     else if (mark_map[y][x])
       return MARKED;
     else if (unprobed_map[y][x]) {
+      moves++;
       mmm--;
       mark_map[y][x] = true;
       return MARKED;
@@ -0,0 +1,174 @@
+import java.util.*;
+
+/**
+ * Anytime estimator of per-cell mine probabilities for a fringe component
+ * that is too large to enumerate. Runs a Metropolis chain over all mine
+ * assignments with at most maxMines mines, penalising broken constraints, and
+ * counts only the assignments that satisfy every constraint. Restricted to
+ * those, the chain samples the solutions uniformly, so the estimate converges
+ * to the exact solution counts and gets better the longer run is called.
+ * @author joar
+ */
+public final class MineSampler {
+
+    private static final double BETA = 2.0; // Penalty per unit of constraint violation
+
+    private final int nVars;
+    private final int[][] constraints;
+    private final int[] sums;
+    private final int maxMines;
+    private final int[][] varConstraints; // constraints each variable is part of
+    private final boolean[] mine;
+    private final int[] current; // current sum of each constraint
+    private final long[] nrSafe;
+    private final SplittableRandom random;
+    private final double[] acceptance; // exp(-BETA * delta) for small deltas
+    private int nrMines;
+    private int violation;
+    private long nrSamples;
+
+    /**
+     * Creates a sampler starting from the all safe assignment.
+     * @param nVars number of variables
+     * @param constraints variable indices of each constraint
+     * @param sums sum of each constraint
+     * @param maxMines max number of mines in an assignment
+     * @param seed random seed
+     */
+    public MineSampler(int nVars, int[][] constraints, int[] sums, int maxMines, long seed){
+        this.nVars = nVars;
+        this.constraints = constraints;
+        this.sums = sums;
+        this.maxMines = maxMines;
+        mine = new boolean[nVars];
+        current = new int[constraints.length];
+        nrSafe = new long[nVars];
+        random = new SplittableRandom(seed);
+
+        int[] degree = new int[nVars];
+        for(int[] vars:constraints){
+            for(int v:vars){
+                degree[v]++;
+            }
+        }
+        varConstraints = new int[nVars][];
+        int maxDegree = 0;
+        for(int v = 0; v < nVars; v++){
+            varConstraints[v] = new int[degree[v]];
+            maxDegree = Math.max(maxDegree, degree[v]);
+            degree[v] = 0;
+        }
+        for(int c = 0; c < constraints.length; c++){
+            for(int v:constraints[c]){
+                varConstraints[v][degree[v]++] = c;
+            }
+            violation += sums[c];
+        }
+        acceptance = new double[2*maxDegree + 2];
+        for(int d = 0; d < acceptance.length; d++){
+            acceptance[d] = Math.exp(-BETA*d);
+        }
+    }
+
+    /**
+     * Runs the chain until the deadline, adding to the samples of earlier runs.
+     * @param deadline value of System.nanoTime at which to stop
+     */
+    public void run(long deadline){
+        do{
+            for(int step = 0; step < nVars; step++){
+                if(constraints.length > 0 && random.nextBoolean()){
+                    swapStep();
+                }else{
+                    flipStep();
+                }
+            }
+            if(violation == 0){
+                nrSamples++;
+                for(int v = 0; v < nVars; v++){
+                    if(!mine[v]){
+                        nrSafe[v]++;
+                    }
+                }
+            }
+        }while(System.nanoTime() < deadline);
+    }
+
+    /**
+     * @return number of constraint satisfying samples taken
+     */
+    public long samples(){
+        return nrSamples;
+    }
+
+    /**
+     * @param v variable index
+     * @return number of samples in which the variable is safe
+     */
+    public long safeCount(int v){
+        return nrSafe[v];
+    }
+
+    // Flip one variable
+    private void flipStep(){
+        int v = random.nextInt(nVars);
+        int change = mine[v] ? -1 : 1;
+        if(nrMines + change > maxMines){
+            return;
+        }
+        int delta = 0;
+        for(int c:varConstraints[v]){
+            delta += Math.abs(current[c] + change - sums[c]) - Math.abs(current[c] - sums[c]);
+        }
+        if(accept(delta)){
+            set(v, change);
+        }
+    }
+
+    // Swap a mine and a safe variable of one constraint, keeping its sum
+    private void swapStep(){
+        int[] vars = constraints[random.nextInt(constraints.length)];
+        int nrMinesIn = 0;
+        for(int v:vars){
+            if(mine[v]){
+                nrMinesIn++;
+            }
+        }
+        if(nrMinesIn == 0 || nrMinesIn == vars.length){
+            return;
+        }
+        int from = pick(vars, true, random.nextInt(nrMinesIn));
+        int to = pick(vars, false, random.nextInt(vars.length - nrMinesIn));
+        int before = violation;
+        set(from, -1);
+        set(to, 1);
+        if(!accept(violation - before)){
+            set(to, -1);
+            set(from, 1);
+        }
+    }
+
+    private boolean accept(int delta){
+        return delta <= 0 || random.nextDouble() < acceptance[Math.min(delta, acceptance.length - 1)];
+    }
+
+    private void set(int v, int change){
+        mine[v] = change > 0;
+        nrMines += change;
+        for(int c:varConstraints[v]){
+            violation -= Math.abs(current[c] - sums[c]);
+            current[c] += change;
+            violation += Math.abs(current[c] - sums[c]);
+        }
+    }
+
+    // The n:th variable of the given state in a constraint
+    private int pick(int[] vars, boolean isMine, int n){
+        for(int v:vars){
+            if(mine[v] == isMine && n-- == 0){
+                return v;
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
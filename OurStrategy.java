@@ -1,485 +1,1425 @@
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  *
  * @author joar
  */
-public final class OurStrategy implements Strategy {
+public final class OurStrategy implements CancellableStrategy, StepStrategy {
 
     /**
-     *Enable all for best performance, disable for testing
+     *Enable all for best performance, disable for testing. Set before the
+     *first game, games only read them
      */
     public boolean prioritizeCorners = true; // Prioritze corners when guessing
     public boolean goodGuessing = true; // Enables our guessing algorithm
     public boolean ignoreLoneCells = true; // Ignore cells that give no info for constraints
-    public boolean enablePrints = true; // Enable various prints in console
-    public int rows; 
-    public int cols;
-    public int ALL_CELLS = -5; // Used in the findNeighborCells function
-    public int OUT_OF_BOUNDS = -4; // value in a cell is out of bound
-    public int MARKED = -3; // if cell is marked as mine
-    public int UNPROBED = -2; // if cell is unbrobed
-    
-    
+    public LogSink log = LogSink.defaultSink(); // Where progress is printed, LogSink.NONE for silence
+    public boolean cacheComponents = true; // Reuse solved fringe components across games
+    public boolean linearDeduction = true; // Row reduce the constraints before searching
+    public boolean usePatterns = true; // Look up fringe cells in the pattern table first
+    public boolean reduceConstraints = true; // Merge duplicate and subset constraints before solving
+    public int solverEngine = CSP_ENGINE; // Engine that decides which fringe cells are forced
+    public int maxCachedComponentSize = 24; // Larger components are always searched
+    public long nodeBudget = 2000000; // CSP nodes or DP states per component before sampling, 0 for no limit
+    public long timeBudgetMillis = 250; // SAT, CSP and DP time per move before sampling, 0 for no limit
+    public long samplingMillis = 25; // Time spent sampling a component over budget
+    public int lookaheadCandidates = 4; // Safest guesses scored by what they reveal, 1 to disable
+    public double lookaheadMargin = 0.02; // Max drop in safety from the safest guess for a candidate
+    public long lookaheadMillis = 20; // Time for scoring the guess candidates
+    public SolverListener listener = null; // Gets the counters of every move and game, null for none
+    public static final int OUT_OF_BOUNDS = -4; // value in a cell is out of bound
+    public static final int MARKED = -3; // if cell is marked as mine
+    public static final int UNPROBED = -2; // if cell is unbrobed
+    public static final int CSP_ENGINE = 0; // Backtracking search over each component
+    public static final int SAT_ENGINE = 1; // CDCL solver over cardinality constraints
+    public static final int DP_ENGINE = 2; // Dynamic programming along the frontier
+
+    /**
+     * Solved fringe components, shared by all games and instances, in at most 16 MiB
+     */
+    public static final SolutionCache componentCache = new SolutionCache(16L << 20);
+
+    /**
+     * Fringe cells forced by their 5x5 surroundings, generated by PatternTable.main
+     */
+    public static final PatternTable patternTable = PatternTable.load("patterns.bin");
+
+    /* Emits the counters as JFR events when run with -Dminesweep.jfr=true, null
+    otherwise or if the JVM has no JFR. Loaded by name so jdk.jfr stays unloaded
+    unless asked for
+    */
+    private static final SolverListener JFR = jfrListener();
+
+    private static final int NEIGHBORS = 8; // Max neighbors of a cell
+    private static final int NEARBY = 24; // Max cells within distance 2 of a cell
+
+    // Contexts of finished games, reused by the next ones
+    private final ConcurrentLinkedQueue<GameContext> contexts = new ConcurrentLinkedQueue<>();
+
     /**
-   * solves the map.
+   * solves the map. Any number of games may be played at once, each gets a
+   * GameContext of its own from the pool.
    * @param m	Map
    */
-    @Override  
+    @Override
     public void play(Map m){
-        if(enablePrints){System.out.println("New game!");}
-        rows = m.rows();
-        cols = m.columns();
-        
-        // If map has not been probed yet, probe corner piece
-        if(!m.probed()){
-            m.probe(20,20);
-        }
-        
-        long before = System.nanoTime();
-        while(!m.done()){
-            probeMap(m);
-        }
+        play(m, null);
+    }
 
-        if(m.won()){
-            if(enablePrints){System.out.println("Game won!");}
-        }else{
-            if(enablePrints){System.out.println("Game lost...");}
+    /**
+     * Solves the map, checking the token while searching.
+     * @param m Map
+     * @param token token of the game, null if it can't be cancelled
+     */
+    @Override
+    public void play(Map m, CancellationToken token){
+        GameContext context = borrowContext();
+        try{
+            context.play(m, token);
+        }finally{
+            contexts.offer(context);
         }
-        long after = System.nanoTime();
-        String print= "It took "+(double)(after-before)/1000000000+" seconds to play the game";
-        if(enablePrints){System.out.println(print);}
-        
-        
-   }
+    }
+
     /**
-   * Probes and marks all sure cells, otherwise it guesses.
+   * Makes one move: probes and marks all sure cells, otherwise it guesses.
+   * The random guesses go on from the state of an earlier move, only play
+   * seeds them for a game.
    * @param m	Map
    */
     public void probeMap(Map m){
+        GameContext context = borrowContext();
+        try{
+            context.prepare(m.rows(), m.columns());
+            context.readBoard(m);
+            context.probeMap(m);
+        }finally{
+            contexts.offer(context);
+        }
+    }
+
+    /**
+     * Starts a game played in steps, see StepStrategy.
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param mines number of mines
+     * @param board what look returns for each cell id, y*columns + x
+     * @return the session, holding a GameContext until closed
+     */
+    @Override
+    public StepStrategy.Session start(int rows, int columns, int mines, int[] board){
+        GameContext context = borrowContext();
+        context.prepare(rows, columns);
+        context.gameStats.reset(rows, columns);
+        System.arraycopy(board, 0, context.board, 0, rows*columns);
+        return new StepSession(context, mines);
+    }
+
+    private GameContext borrowContext(){
+        GameContext context = contexts.poll();
+        return context == null ? new GameContext() : context;
+    }
+
+    private static SolverListener jfrListener(){
+        if(!Boolean.getBoolean("minesweep.jfr")){
+            return null;
+        }
+        try{
+            return (SolverListener)Class.forName("JfrSolverListener").getDeclaredConstructor()
+                .newInstance();
+        }catch(ReflectiveOperationException | LinkageError e){
+            return null;
+        }
+    }
+
+    private static boolean isSubset(long[] a, long[] b){
+        for(int w = 0; w < a.length; w++){
+            if((a[w] & ~b[w]) != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[][] toArrays(ArrayList<ArrayList<Integer>> lists){
+        int[][] arrays = new int[lists.size()][];
+        for(int i = 0; i < arrays.length; i++){
+            arrays[i] = toArray(lists.get(i));
+        }
+        return arrays;
+    }
+
+    private static int[] toArray(ArrayList<Integer> list){
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++){
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static int findRoot(int[] parent, int i){
+        while(parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * A game played in steps. The session stands in for the Map while its
+     * context analyses the board: look reads the shadow board, and probe and
+     * mark only record the move. A recorded probe leaves the cell unprobed
+     * until the caller reports what it revealed, a mark takes effect at once.
+     */
+    private final class StepSession implements StepStrategy.Session, Map {
+
+        private final int mines;
+        private GameContext context;
+        private int[] moves = new int[16];
+        private int nrMoves;
+
+        StepSession(GameContext context, int mines){
+            this.context = context;
+            this.mines = mines;
+        }
+
+        @Override
+        public int[] step(int[] cells, int[] values){
+            for(int i = 0; i < cells.length; i++){
+                context.board[cells[i]] = values[i];
+            }
+            nrMoves = 0;
+            context.probeMap(this);
+            return Arrays.copyOf(moves, nrMoves);
+        }
+
+        @Override
+        public void close(){
+            if(context != null){
+                contexts.offer(context);
+                context = null;
+            }
+        }
+
+        private void record(int move){
+            if(nrMoves == moves.length){
+                moves = Arrays.copyOf(moves, 2*nrMoves);
+            }
+            moves[nrMoves++] = move;
+        }
+
+        private int look(int id){
+            return context.board[id];
+        }
+
+        @Override
+        public int probe(int x, int y){
+            record((y*context.cols + x) << 1);
+            return UNPROBED;
+        }
+
+        @Override
+        public int mark(int x, int y){
+            record((y*context.cols + x) << 1 | MARK);
+            return MARKED;
+        }
+
+        @Override
+        public int unmark(int x, int y){
+            return look(x, y);
+        }
+
+        @Override
+        public int look(int x, int y){
+            if(x < 0 || x >= context.cols || y < 0 || y >= context.rows){
+                return OUT_OF_BOUNDS;
+            }
+            return look(y*context.cols + x);
+        }
+
+        @Override
+        public int mines_minus_marks(){
+            int marks = 0;
+            for(int id = 0; id < context.rows*context.cols; id++){
+                if(context.board[id] == MARKED){
+                    marks++;
+                }
+            }
+            return mines - marks;
+        }
+
+        @Override
+        public boolean won(){
+            return false;
+        }
+
+        @Override
+        public boolean done(){
+            return false;
+        }
+
+        @Override
+        public boolean probed(){
+            return true;
+        }
+
+        @Override
+        public int rows(){
+            return context.rows;
+        }
+
+        @Override
+        public int columns(){
+            return context.cols;
+        }
+
+        @Override
+        public void display(){
+        }
+
+        @Override
+        public int pick(int n){
+            return context.random.nextInt(n);
+        }
+    }
 
+    /**
+     * Mutable state of one game: the board size and tables, the shadow board,
+     * the cell sets of the last scan and the search counters. The buffers are
+     * kept between games and only rebuilt when the board size changes.
+     */
+    private final class GameContext {
 
-        int currentCell;
-        ArrayList<Cell> unprobedNeighborCells;
-        ArrayList<Cell> markedNeighborCells;
-        ArrayList<Cell> fringeCells = new ArrayList<>();
-        ArrayList<Integer> unassignedFringes = new ArrayList<>();
-        ArrayList<Integer> constraint;
-        ArrayList<ArrayList<Integer>> constraints = new ArrayList<>();
-        ArrayList<Integer> constraintSums = new ArrayList<>();
-        ArrayList<Cell> allUnprobedCells = new ArrayList<Cell>();
-        boolean newFringeCell;
-        int nrMinesLeft = m.mines_minus_marks();
-        boolean cellClearedNearby; // Used to check if a cleared cell can give useful info
+        private int rows;
+        private int cols;
+        private long nodesVisited; // CSP nodes visited in the current search
+        private long searchDeadline; // System.nanoTime at which the searches of a move give up, 0 for never
+        private boolean searchAborted; // The current search went over budget
+        private CancellationToken token; // Checked while searching, null if the game can't be cancelled
 
-        for(int x = 0; x<cols; x++){
-            for(int y = 0; y<rows; y++){
-                currentCell = m.look(x,y);
+        private int tableRows = -1; // Board size the tables below were built for
+        private int tableCols = -1;
+        private int[] neighborTable; // Ids of the neighbors of each cell, NEIGHBORS per cell
+        private int[] neighborCount;
+        private int[] nearbyTable; // Ids of the cells within distance 2, NEARBY per cell
+        private int[] nearbyCount;
+        private final int[] unprobedNeighbors = new int[NEIGHBORS]; // Filled by scanNeighbors
+        private int nrUnprobedNeighbors;
+        private int nrMarkedNeighbors;
 
-                // Save all unprobed cells
-                if(currentCell == UNPROBED){
-                    allUnprobedCells.add(new Cell(x,y,currentCell));
+        /* Cells are identified by their id y*cols + x. The sets below are rebuilt
+        by every scan of the board in probeMap
+        */
+        private int[] fringeCells; // Ids of the fringe cells, nrFringe of them
+        private int nrFringe;
+        private int[] fringeIndex; // Index in fringeCells of each fringe cell id
+        private long[] fringeBits; // Fringe membership by id
+        private int[] unprobedCells; // Ids of all unprobed cells, nrUnprobed of them
+        private int nrUnprobed;
+        private long[] unprobedBits; // Unprobed membership by id
+        private int[] cornerCells; // Corner ids, in the order they are tried
+        private final Random random = new Random(0); // Reseeded by play from the Map of every game
+        private int[] queuedMoves; // Moves found by the current analysis, see queueMove
+        private int nrQueued;
+        private long[] queuedBits; // Cells with a queued move
+        private int[] board; // What look returns for each id, kept in sync by probe and mark
+        private final int[] patternScratch = new int[PatternTable.SCRATCH]; // Window of a pattern lookup
+        private boolean instrumented; // Moves are timed and reported this game
+        private boolean jfrEnabled; // The events go to JFR this game
+        private final SolverListener.Move moveStats = new SolverListener.Move();
+        private final SolverListener.Game gameStats = new SolverListener.Game();
+        /**
+       * solves the map.
+       * @param m	Map
+       * @param token token of the game, null if it can't be cancelled
+       */
+        void play(Map m, CancellationToken token){
+            if(log.enabled()){log.log("New game!");}
+            start(m, token);
+            gameStats.mines = m.mines_minus_marks();
+        
+            // If map has not been probed yet, probe corner piece
+            if(!m.probed()){
+                m.probe(20,20);
+            }
+            readBoard(m);
+        
+            long before = System.nanoTime();
+            while(!m.done()){
+                probeMap(m);
+            }
+
+            if(m.won()){
+                if(log.enabled()){log.log("Game won!");}
+            }else{
+                if(log.enabled()){log.log("Game lost...");}
+            }
+            long after = System.nanoTime();
+            if(log.enabled()){
+                log.log("It took "+(double)(after-before)/1000000000+" seconds to play the game");
+            }
+            if(instrumented){
+                gameStats.won = m.won();
+                if(listener != null){
+                    listener.game(gameStats);
+                }
+                if(jfrEnabled){
+                    JFR.game(gameStats);
                 }
+            }
+        
+        
+       }
+        /**
+       * Probes and marks all sure cells, otherwise it guesses. All moves found by
+       * one analysis of the board are applied together, before the next analysis.
+       * The analysis is timed and reported if the game is instrumented.
+       * @param m	Map
+       */
+        public void probeMap(Map m){
+            moveStats.reset();
+            if(!instrumented){
+                analyze(m);
+                return;
+            }
+            long before = System.nanoTime();
+            analyze(m);
+            moveStats.nanos = System.nanoTime() - before;
+            gameStats.add(moveStats);
+            if(listener != null){
+                listener.move(moveStats);
+            }
+            if(jfrEnabled){
+                JFR.move(moveStats);
+            }
+        }
+
+        private void analyze(Map m){
+
+            int currentCell;
+            int id;
+            ArrayList<Integer> constraint;
+            ArrayList<ArrayList<Integer>> constraints = new ArrayList<>();
+            ArrayList<Integer> constraintSums = new ArrayList<>();
+            int nrMinesLeft = m.mines_minus_marks();
+            boolean cellClearedNearby; // Used to check if a cleared cell can give useful info
+
+            nrFringe = 0;
+            nrUnprobed = 0;
+            searchDeadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis*1000000 : 0;
+            Arrays.fill(fringeBits, 0);
+            Arrays.fill(unprobedBits, 0);
+            long scanStart = instrumented ? System.nanoTime() : 0;
+
+            for(int x = 0; x<cols; x++){
+                for(int y = 0; y<rows; y++){
+                    id = y*cols + x;
+                    currentCell = board[id];
+
+                    // Save all unprobed cells
+                    if(currentCell == UNPROBED){
+                        unprobedCells[nrUnprobed++] = id;
+                        unprobedBits[id >>> 6] |= 1L << id;
+                    }
                 
-                // If cell has no mines around, probe all unprobed neighbor cells
-                if(currentCell == 0){
-                    unprobedNeighborCells = findNeighborCells(m, x, y, UNPROBED);
-                    if(unprobedNeighborCells.size() != 0){
-                        for(Cell cell:unprobedNeighborCells){
-                            m.probe(cell.x, cell.y);
+                    // If cell has no mines around, probe all unprobed neighbor cells
+                    if(currentCell == 0){
+                        scanNeighbors(id);
+                        for(int k = 0; k < nrUnprobedNeighbors; k++){
+                            queueProbe(unprobedNeighbors[k]);
                         }
-                        return;
                     }
-                }
-                /* If the cell has neighbor mines, find all the neighbor fringe cells
-                and save them. Also save the constraints*/
-                else if(currentCell > 0){
+                    /* If the cell has neighbor mines, find all the neighbor fringe cells
+                    and save them. Also save the constraints*/
+                    else if(currentCell > 0){
                 
-                    unprobedNeighborCells = findNeighborCells(m, x, y, UNPROBED);
-                    markedNeighborCells = findNeighborCells(m, x, y, MARKED);
-
-                    // Check if this cell should be disregarded due to giving no information
-                    if(ignoreLoneCells && currentCell < unprobedNeighborCells.size() + markedNeighborCells.size()){
-                        cellClearedNearby = clearedCellsNearby(m, x, y, 2);
-                        if(!cellClearedNearby){
-                            // We gain no info from this cell, continue to next cell
-                            // But remove nr of mines from the mine count
-                            nrMinesLeft += -(currentCell - markedNeighborCells.size());
-                            continue;
+                        scanNeighbors(id);
+
+                        // All mines marked, or as many mines as unprobed neighbors
+                        if(nrUnprobedNeighbors != 0 && currentCell == nrMarkedNeighbors){
+                            for(int k = 0; k < nrUnprobedNeighbors; k++){
+                                queueProbe(unprobedNeighbors[k]);
+                            }
+                        }else if(currentCell - nrMarkedNeighbors == nrUnprobedNeighbors){
+                            for(int k = 0; k < nrUnprobedNeighbors; k++){
+                                queueMark(unprobedNeighbors[k]);
+                            }
                         }
-                    }
 
-                    // Check each cell if already in fringe list, if not to list
-                    for(Cell cell:unprobedNeighborCells){
-                        newFringeCell = true;
-                        for(Cell fringeCell:fringeCells){
-                            if(fringeCell.equals(cell)){
-                                newFringeCell = false;
-                                break;
+                        // Check if this cell should be disregarded due to giving no information
+                        if(ignoreLoneCells && currentCell < nrUnprobedNeighbors + nrMarkedNeighbors){
+                            cellClearedNearby = clearedCellsNearby(id);
+                            if(!cellClearedNearby){
+                                // We gain no info from this cell, continue to next cell
+                                // But remove nr of mines from the mine count
+                                nrMinesLeft += -(currentCell - nrMarkedNeighbors);
+                                continue;
                             }
                         }
-                        if(newFringeCell){
-                            fringeCells.add(cell);
-                            unassignedFringes.add(-1);
+
+                        // Check each cell if already in fringe list, if not to list
+                        for(int k = 0; k < nrUnprobedNeighbors; k++){
+                            int neighbor = unprobedNeighbors[k];
+                            if((fringeBits[neighbor >>> 6] & 1L << neighbor) == 0){
+                                fringeBits[neighbor >>> 6] |= 1L << neighbor;
+                                fringeIndex[neighbor] = nrFringe;
+                                fringeCells[nrFringe++] = neighbor;
+                            }
                         }
-                    }
-                    // Find and add constraints
-                    if(unprobedNeighborCells.size() != 0){
-                        /* If number in cell is greater than the nr of marked neighbors we can
-                        add a new constraint*/
-                        if(currentCell >= markedNeighborCells.size()){
-                            constraint = new ArrayList<>();
-                            for(Cell cell:unprobedNeighborCells){
-                                for(Cell fringeCell:fringeCells){
-                                    /* Finds the index of the current cell in the fringeCells
-                                    This doesn't crash because of the loops above:
-                                    fringeCells are scanned and found around each numbered cell.
+                        // Find and add constraints
+                        if(nrUnprobedNeighbors != 0){
+                            /* If number in cell is greater than the nr of marked neighbors we can
+                            add a new constraint*/
+                            if(currentCell >= nrMarkedNeighbors){
+                                constraint = new ArrayList<>();
+                                for(int k = 0; k < nrUnprobedNeighbors; k++){
+                                    /* The index of the cell in fringeCells, all unprobed
+                                    neighbors were added to the fringe just above
                                     */
-                                    if(cell.equals(fringeCell)){
-                                        constraint.add(fringeCells.indexOf(fringeCell));
-                                        // Index is same as in unassignedFringes
-                                    }
+                                    constraint.add(fringeIndex[unprobedNeighbors[k]]);
                                 }
+                                // Add the constraint
+                                constraints.add(constraint);
+                                // The constraint sum will be the cell flag - nr of marked neighbors
+                                constraintSums.add(currentCell - nrMarkedNeighbors);
                             }
-                            // Add the constraint
-                            constraints.add(constraint);
-                            // The constraint sum will be the cell flag - nr of marked neighbors
-                            constraintSums.add(currentCell - markedNeighborCells.size());
                         }
                     }
                 }
             }
-        }
 
-        if(fringeCells.size() == 0){
-            /* No fringe! Can happen for instance if you click bottom
-            and a 3 shows up and you mark all cells around you.*/
-            Cell safestCell = getRandomCell(allUnprobedCells);
-            m.probe(safestCell.x, safestCell.y);
-            if(enablePrints){System.out.println("No fringe cells, probing random!");}
-            return;
-        }
+            if(instrumented){
+                moveStats.scanNanos = System.nanoTime() - scanStart;
+            }
+            moveStats.fringe = nrFringe;
 
-        /* Now that we have all constraints and fringe cells, call the CSP solver and get
-        all possible solutions back
-        */
-        ArrayList<ArrayList<Integer>> solutions = new ArrayList<ArrayList<Integer>>();
-        cspSolver(unassignedFringes, constraints, constraintSums, solutions, 0, 0, nrMinesLeft);
-
-        /*Now loop over the fringe cells and probe/flag all solved cells*/
-        boolean probedOrMarked = false; // Return value of function
-        // nrSafeCells counts nr of safe returns for each fringe cell, used to make guess
-        int[] nrSafeCells = new int[fringeCells.size()]; 
-        if(solutions.size() != 0){
-            boolean isMine;
-            boolean isSafe;
-            Cell fringeCell;
-            for(int idx = 0; idx < fringeCells.size(); idx++){
-                //Check if safe/mine in every solution
-                isMine = true;
-                isSafe = true;
-                fringeCell = fringeCells.get(idx);
-                for(ArrayList<Integer> solution:solutions){
-                    if(solution.get(idx) != 1){ // Is safe
-                        isMine = false;
-                        nrSafeCells[idx] += 1;
-                    }else if(solution.get(idx) != 0){ // Is mine
-                        isSafe = false;
+            // Common local patterns cost one lookup per fringe cell
+            if(usePatterns){
+                for(int idx = 0; idx < nrFringe; idx++){
+                    int forced = patternTable.forced(board, rows, cols, fringeCells[idx], patternScratch);
+                    if(forced == 1){
+                        queueMark(fringeCells[idx]);
+                    }else if(forced == 0){
+                        queueProbe(fringeCells[idx]);
                     }
                 }
-                // Probe or mark the cell
-                if(isMine){
-                    m.mark(fringeCell.x, fringeCell.y);
-                    probedOrMarked = true;
-                }else if(isSafe){
-                    m.probe(fringeCell.x, fringeCell.y);
-                    probedOrMarked = true;
-                }
             }
-        }
 
+            // The simple rules above found moves, the solvers are not needed this round
+            if(applyMoves(m)){
+                return;
+            }
+
+            if(nrFringe == 0){
+                /* No fringe! Can happen for instance if you click bottom
+                and a 3 shows up and you mark all cells around you.*/
+                int safestCell = getRandomCell(false);
+                moveStats.stage = SolverListener.Move.RANDOM;
+                probe(m, safestCell);
+                if(log.enabled()){log.log("No fringe cells, probing random!");}
+                return;
+            }
+
+            if(reduceConstraints && !reduceConstraints(constraints, constraintSums)){
+                // Only possible with a wrong mark, no solver can make sense of it
+                int guessedCell = getRandomCell(false);
+                if(log.enabled()){log.log("Contradicting constraints, probing random!");}
+                moveStats.stage = SolverListener.Move.RANDOM;
+                probe(m, guessedCell);
+                return;
+            }
+            moveStats.constraints = constraints.size();
 
-        // Nothing was probed or marked, we need to make a guess...
-        if(!probedOrMarked){
-            if(!goodGuessing){
-                // All guessing algorithms deactivated
-                Cell guessedCell = getRandomCell(allUnprobedCells);
-                m.probe(guessedCell.x, guessedCell.y);
+            /* Cells forced by linear combinations of the constraints are found in
+            polynomial time, the search below only runs when none are left
+            */
+            if(linearDeduction){
+                moveStats.stage = SolverListener.Move.LINEAR;
+                int[] forced = LinearDeducer.deduce(nrFringe, toArrays(constraints),
+                    toArray(constraintSums));
+                if(applyForced(m, forced)){
+                    return;
+                }
             }
-            if(solutions.size() != 0){
-                int maxNr = 0;
+
+            /* The SAT engine decides forced cells with clause learning, the search
+            below then only has to run when a guess is needed
+            */
+            if(solverEngine == SAT_ENGINE){
+                moveStats.stage = SolverListener.Move.SAT;
+                int[] forced = SatDeducer.deduce(nrFringe, toArrays(constraints),
+                    toArray(constraintSums), nrMinesLeft, searchDeadline, token);
+                if(applyForced(m, forced)){
+                    return;
+                }
+            }
+
+            /* Now that we have all constraints and fringe cells, solve each independent
+            part of the fringe and count in how many solutions each cell is safe
+            */
+            moveStats.stage = SolverListener.Move.SEARCH;
+            double[] nrSafeCells = new double[nrFringe];
+            double[] nrSolutions = new double[nrFringe];
+            int[] sure = new int[nrFringe];
+            solveComponents(constraints, constraintSums, nrMinesLeft,
+                nrSafeCells, nrSolutions, sure);
+
+            /* Probe or mark the cells that are safe or a mine in every solution. This
+            is decided exactly, the double counts above 2^53 solutions only rank guesses
+            */
+            boolean probedOrMarked = applyForced(m, sure);
+
+
+            // Nothing was probed or marked, we need to make a guess...
+            if(!probedOrMarked){
+                if(!goodGuessing){
+                    // All guessing algorithms deactivated
+                    int guessedCell = getRandomCell(false);
+                    moveStats.stage = SolverListener.Move.RANDOM;
+                    probe(m, guessedCell);
+                    return;
+                }
+                double bestFringeProb = -1.0;
                 int maxIdx = 0;
                 // Find safest fringe cell
                 for(int idx = 0; idx<nrSafeCells.length; idx++){
-                    if(nrSafeCells[idx] > maxNr){
-                        maxNr = nrSafeCells[idx];
+                    if(nrSolutions[idx] != 0
+                        && nrSafeCells[idx]/nrSolutions[idx] > bestFringeProb){
+                        bestFringeProb = nrSafeCells[idx]/nrSolutions[idx];
                         maxIdx = idx;
                     }
                 }
+                if(bestFringeProb < 0){
+                    // No component had a solution, the constraints are inconsistent
+                    int guessedCell = getRandomCell(false);
+                    if(log.enabled()){log.log("No solutions, probing random!");}
+                    moveStats.stage = SolverListener.Move.RANDOM;
+                    probe(m, guessedCell);
+                    return;
+                }
                 // Check if a random guess would be better
-                double randomProb = 1.0-(double)nrMinesLeft/allUnprobedCells.size();
-                double bestFringeProb = (double)maxNr/solutions.size();
-                String printstr = "";
-                Cell safestCell;
+                double randomProb = 1.0-(double)nrMinesLeft/nrUnprobed;
+                int safestCell;
+                boolean outsideFringe;
                 if(randomProb > bestFringeProb){
                     // Make random guess outside fringe, prioritize corners
-                    ArrayList<Cell> unprobedNonFringeCells = subtractCells(
-                        allUnprobedCells, fringeCells);
-                    if(unprobedNonFringeCells.size() == 0){
+                    if(nrUnprobed == nrFringe){
                         // This should in theory never happpen, but just in case
-                        safestCell = fringeCells.get(maxIdx);
+                        safestCell = fringeCells[maxIdx];
                     }else{
-                        safestCell = getRandomCell(unprobedNonFringeCells);
+                        safestCell = getRandomCell(true);
                     }
-                    printstr = "Guessing RANDOM on ("+safestCell.x+","+safestCell.y+
-                    ") with confidence "+randomProb;
+                    outsideFringe = true;
                 }else{
-                    safestCell = fringeCells.get(maxIdx);
-                    printstr = "Guessing on ("+safestCell.x+","+safestCell.y+
-                    ") with confidence "+bestFringeProb;
+                    if(lookaheadCandidates > 1){
+                        maxIdx = lookahead(constraints, constraintSums, nrMinesLeft,
+                            nrSafeCells, nrSolutions, maxIdx);
+                    }
+                    safestCell = fringeCells[maxIdx];
+                    outsideFringe = false;
+                }
+                if(log.enabled()){
+                    log.log("Guessing "+(outsideFringe ? "RANDOM " : "")+"on ("+safestCell % cols+","
+                        +safestCell / cols+") with confidence "
+                        +(outsideFringe ? randomProb : nrSafeCells[maxIdx]/nrSolutions[maxIdx]));
                 }
-                if(enablePrints){System.out.println(printstr);}
-                m.probe(safestCell.x, safestCell.y);
+                moveStats.stage = outsideFringe ? SolverListener.Move.RANDOM : SolverListener.Move.GUESS;
+                probe(m, safestCell);
                 return;
+
             }
 
         }
 
-    }
+        /**
+         * Picks the guess among the safest fringe cells that is expected to make
+         * the most progress, scored by the GuessEvaluator within lookaheadMillis.
+         * @param constraints constraints as lists of fringe indices
+         * @param constraintSums sum of each constraint
+         * @param nrMinesLeft mines left to assign
+         * @param nrSafeCells nr of solutions in which each fringe cell is safe
+         * @param nrSolutions nr of solutions of each fringe cell's component
+         * @param safest fringe index of the safest cell
+         * @return fringe index of the cell to guess
+         */
+        private int lookahead(ArrayList<ArrayList<Integer>> constraints,
+                ArrayList<Integer> constraintSums, int nrMinesLeft,
+                double[] nrSafeCells, double[] nrSolutions, int safest){
+            double bestProb = nrSafeCells[safest]/nrSolutions[safest];
+            Integer[] order = new Integer[nrFringe];
+            for(int idx = 0; idx < nrFringe; idx++){
+                order[idx] = idx;
+            }
+            final double[] prob = new double[nrFringe];
+            for(int idx = 0; idx < nrFringe; idx++){
+                prob[idx] = nrSolutions[idx] == 0 ? -1.0 : nrSafeCells[idx]/nrSolutions[idx];
+            }
+            Arrays.sort(order, new Comparator<Integer>(){
+                @Override
+                public int compare(Integer a, Integer b){
+                    return Double.compare(prob[b], prob[a]);
+                }
+            });
+            int nrCandidates = 0;
+            while(nrCandidates < Math.min(lookaheadCandidates, nrFringe)
+                    && prob[order[nrCandidates]] >= bestProb - lookaheadMargin){
+                nrCandidates++;
+            }
+            if(nrCandidates < 2){
+                return safest;
+            }
 
-    /**
-     *Finds neighbor cells of a given type
-     * @param m Map 
-     * @param x position x
-     * @param y position y
-     * @param cellType finds neighbor cells of this cell type
-     * @return the neighbor cells of a given cell type
-     */
-    public ArrayList<Cell> findNeighborCells(Map m, int x, int y, int cellType){
-        /* Returns an arraylist of all cells of type cellType neighboring the cell
-        at location (x,y). if cellType == ALL_CELLS it returns all neighbors
-        */
-        int currentCell;
-        ArrayList<Cell> returnList = new ArrayList<Cell>();;
-        for(int xFwd = -1; xFwd<2; xFwd++){
-            for(int yFwd = -1; yFwd<2; yFwd++){
-                // Skip own cell
-                if(xFwd == 0 && yFwd == 0){
-                    continue;
+            // Unprobed neighbors outside the fringe get variables after the fringe cells
+            int[] candidates = new int[nrCandidates];
+            int[][] neighbors = new int[nrCandidates][];
+            for(int i = 0; i < nrCandidates; i++){
+                candidates[i] = order[i];
+                scanNeighbors(fringeCells[order[i]]);
+                neighbors[i] = new int[nrUnprobedNeighbors];
+                int extra = nrFringe;
+                for(int k = 0; k < nrUnprobedNeighbors; k++){
+                    neighbors[i][k] = isFringe(unprobedNeighbors[k])
+                        ? fringeIndex[unprobedNeighbors[k]] : extra++;
                 }
-                currentCell = m.look(x+xFwd, y+yFwd);
-                if(cellType == ALL_CELLS || currentCell == cellType){
-                    returnList.add(new Cell(x+xFwd, y+yFwd, currentCell));
+            }
+            GuessEvaluator evaluator = new GuessEvaluator(nrFringe, toArrays(constraints),
+                toArray(constraintSums), nrMinesLeft);
+            double[] progress = evaluator.progress(candidates, neighbors,
+                System.nanoTime() + lookaheadMillis*1000000, token);
+            for(double p:progress){
+                if(Double.isNaN(p)){
+                    moveStats.unscored++;
                 }
             }
+            if(moveStats.unscored > 0 && log.enabled()){
+                log.log("Lookahead left "+moveStats.unscored+" of "+nrCandidates+" candidates unscored");
+            }
+            if(Double.isNaN(progress[0])){
+                return safest; // The safest cell was not scored, nothing to compare with
+            }
+            int best = candidates[0];
+            double bestScore = prob[best]*(1 + progress[0]);
+            for(int i = 1; i < nrCandidates; i++){
+                double score = prob[candidates[i]]*(1 + progress[i]);
+                if(!Double.isNaN(score) && score > bestScore){
+                    best = candidates[i];
+                    bestScore = score;
+                }
+            }
+            return best;
         }
-        return returnList;
-    }
 
-    /**
-     *finds if there are cleared cells nearby at a given distance
-     * @param m Map
-     * @param x index int
-     * @param y index int 
-     * @param distance at given distance
-     * @return boolean
-     */
-    public boolean clearedCellsNearby(Map m, int x, int y, int distance){
-        int currentCell;
-        for(int xFwd = -distance; xFwd<distance+1; xFwd++){
-            for(int yFwd = -distance; yFwd<distance+1; yFwd++){
-                // Skip own cell
-                if(xFwd == 0 && yFwd == 0){
-                    continue;
-                }
-                currentCell = m.look(x+xFwd,y+yFwd);
-                if(currentCell >= 0){
-                    return true;
+        /**
+         * Probes the forced safe and marks the forced mine fringe cells.
+         * @param m Map
+         * @param forced 0 for safe, 1 for mine, LinearDeducer.UNKNOWN otherwise, by fringe index
+         * @return true if any cell was probed or marked
+         */
+        private boolean applyForced(Map m, int[] forced){
+            for(int idx = 0; idx < forced.length; idx++){
+                if(forced[idx] == 1){
+                    queueMark(fringeCells[idx]);
+                }else if(forced[idx] == 0){
+                    queueProbe(fringeCells[idx]);
                 }
             }
+            return applyMoves(m);
+        }
+
+        private void queueProbe(int id){
+            queueMove(2*id);
+        }
+
+        private void queueMark(int id){
+            queueMove(2*id + 1);
+        }
+
+        // Queues a move, 2*id to probe and 2*id + 1 to mark, unless the cell already has one
+        private void queueMove(int move){
+            int id = move >>> 1;
+            if((queuedBits[id >>> 6] & 1L << id) == 0){
+                queuedBits[id >>> 6] |= 1L << id;
+                queuedMoves[nrQueued++] = move;
+            }
         }
-        return false;
-    }
-    
-   /**
- * Loops finds all possible solutions and stores them in a solution Array list  
- * @param fringeAssignment as ArrayList Integer
- * @param constraints  as ArrayList ArrayList Integer
- * @param constraintSums ArrayList Integer 
-     * @param solutions the solution ArrayList
- * @param index index for next assignment
-     * @param assignedMines number of assigned mines
-     * @param nrMinesLeft mines left to assign
- */
-    public void cspSolver(ArrayList<Integer> fringeAssignment, 
-            ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> constraintSums, 
-            ArrayList<ArrayList<Integer>> solutions, int index, int assignedMines, 
-            int nrMinesLeft){
 
-        // Base case
-        if(fringeAssignment.get(fringeAssignment.size()-1) != -1){
-            if(constraintSatisfied(fringeAssignment, constraints, constraintSums, false)){
-                solutions.add(fringeAssignment);
+        /**
+         * Applies all queued moves. A probe that reveals a 0 queues the probes of
+         * its unprobed neighbors, so whole open areas are cleared in one batch.
+         * @param m Map
+         * @return true if any move was queued
+         */
+        private boolean applyMoves(Map m){
+            if(nrQueued == 0){
+                return false;
+            }
+            for(int i = 0; i < nrQueued && !m.done(); i++){
+                moveStats.deductions++;
+                int id = queuedMoves[i] >>> 1;
+                if((queuedMoves[i] & 1) == 1){
+                    mark(m, id);
+                }else if(probe(m, id) == 0){
+                    scanNeighbors(id);
+                    for(int k = 0; k < nrUnprobedNeighbors; k++){
+                        queueProbe(unprobedNeighbors[k]);
+                    }
+                }
+            }
+            for(int i = 0; i < nrQueued; i++){
+                int id = queuedMoves[i] >>> 1;
+                queuedBits[id >>> 6] &= ~(1L << id);
             }
-            return;
+            nrQueued = 0;
+            return true;
         }
 
-        ArrayList<Integer> nextAssignment;
-        for(int i=0; i<2; i++){
-            nextAssignment = new ArrayList<>(fringeAssignment);
-            nextAssignment.set(index, i);
+        /**
+         * Splits the fringe into independent components and solves each of them.
+         * Small components are looked up in the shared componentCache first, so a
+         * shape that was solved before, in this or an earlier game, is not searched again.
+         * Components that exceed the search budget are sampled instead, the counts of
+         * their cells are then estimates and none of them is sure.
+         * @param constraints constraints as lists of fringe indices
+         * @param constraintSums sum of each constraint
+         * @param nrMinesLeft mines left to assign
+         * @param nrSafeCells filled with the nr of solutions in which each fringe cell is safe
+         * @param nrSolutions filled with the nr of solutions of each fringe cell's component
+         * @param sure filled with 0 for cells that are a mine in no solution, 1 for cells
+         * that are safe in none and LinearDeducer.UNKNOWN otherwise
+         */
+        public void solveComponents(ArrayList<ArrayList<Integer>> constraints,
+                ArrayList<Integer> constraintSums, int nrMinesLeft,
+                double[] nrSafeCells, double[] nrSolutions, int[] sure){
+
+            // Union the cells of every constraint
+            int n = nrFringe;
+            int[] parent = new int[n];
+            for(int i = 0; i < n; i++){
+                parent[i] = i;
+            }
+            for(ArrayList<Integer> constraint:constraints){
+                int root = findRoot(parent, constraint.get(0));
+                for(int var:constraint){
+                    parent[findRoot(parent, var)] = root;
+                }
+            }
+
+            // Number the components and give each cell an index within its component
+            int[] componentOf = new int[n];
+            int[] localIdx = new int[n];
+            int[] componentSize = new int[n];
+            int[] rootComponent = new int[n];
+            Arrays.fill(rootComponent, -1);
+            int nrComponents = 0;
+            for(int i = 0; i < n; i++){
+                int root = findRoot(parent, i);
+                if(rootComponent[root] == -1){
+                    rootComponent[root] = nrComponents++;
+                }
+                componentOf[i] = rootComponent[root];
+                localIdx[i] = componentSize[componentOf[i]]++;
+            }
+
+            int[][] componentCells = new int[nrComponents][];
+            ArrayList<ArrayList<ArrayList<Integer>>> componentConstraints = new ArrayList<>();
+            ArrayList<ArrayList<Integer>> componentSums = new ArrayList<>();
+            for(int c = 0; c < nrComponents; c++){
+                componentCells[c] = new int[componentSize[c]];
+                componentConstraints.add(new ArrayList<ArrayList<Integer>>());
+                componentSums.add(new ArrayList<Integer>());
+            }
+            for(int i = 0; i < n; i++){
+                componentCells[componentOf[i]][localIdx[i]] = fringeCells[i];
+            }
+            for(int idx = 0; idx < constraints.size(); idx++){
+                int c = componentOf[constraints.get(idx).get(0)];
+                ArrayList<Integer> local = new ArrayList<>();
+                for(int var:constraints.get(idx)){
+                    local.add(localIdx[var]);
+                }
+                componentConstraints.get(c).add(local);
+                componentSums.get(c).add(constraintSums.get(idx));
+            }
 
-            if(constraintSatisfied(nextAssignment, 
-                constraints, constraintSums, true) && assignedMines<=nrMinesLeft){
-                // Only go deeper if current assignment does not break constraints
-                cspSolver(nextAssignment, constraints, constraintSums, 
-                    solutions, index+1, assignedMines+i, nrMinesLeft);
+            double[][] localSafe = new double[nrComponents][];
+            double[] localSolutions = new double[nrComponents];
+            int[][] localSure = new int[nrComponents][];
+            for(int c = 0; c < nrComponents; c++){
+                localSafe[c] = new double[componentSize[c]];
+                localSure[c] = new int[componentSize[c]];
+                Arrays.fill(localSure[c], LinearDeducer.UNKNOWN);
+                localSolutions[c] = solveComponent(componentCells[c], componentConstraints.get(c),
+                    componentSums.get(c), nrMinesLeft, localSafe[c], localSure[c]);
+                if(localSolutions[c] < 0){
+                    localSolutions[c] = sampleComponent(componentSize[c],
+                        componentConstraints.get(c), componentSums.get(c), nrMinesLeft, localSafe[c]);
+                }
+                moveStats.solutions += localSolutions[c];
+            }
+            moveStats.components += nrComponents;
+            for(int i = 0; i < n; i++){
+                nrSafeCells[i] = localSafe[componentOf[i]][localIdx[i]];
+                nrSolutions[i] = localSolutions[componentOf[i]];
+                sure[i] = localSure[componentOf[i]][localIdx[i]];
             }
         }
 
-    }
-    
-    /**
- * Loops through the constraints and checks if they are satisfied: 
- * @param vars as ArrayList
- * @param constraints ArrayList
- * @param sum ArrayList
-     * @param forwardChecking
- * @return boolean
- */
-    public boolean constraintSatisfied(ArrayList<Integer> vars, 
-            ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sum,
-            boolean forwardChecking){
-
-        int tmpSum;
-        boolean partialTest;
-        int unassigned;
-        partialTest=false;
-        int firstUnassigned=0;
-        for(int index=0;index<constraints.size();index++){
-            tmpSum=0;
-            unassigned=0;
-            for(int var:constraints.get(index)){
-                if(vars.get(var)==-1){
-                    partialTest=true;
-                    unassigned++;
-                    if(firstUnassigned==0){
-                        firstUnassigned=var;
+        /**
+         * Solves one fringe component.
+         * @param cells the cell ids of the component
+         * @param constraints constraints as lists of indices into cells
+         * @param sums sum of each constraint
+         * @param nrMinesLeft mines left to assign
+         * @param nrSafe filled with the nr of solutions in which each cell is safe
+         * @param sure filled with 0 for cells that are a mine in no solution, 1 for cells
+         * that are safe in none, left as is otherwise or if the search went over budget
+         * @return the nr of solutions, or -1 if the search went over budget. With the
+         * DP_ENGINE components are counted along the frontier instead of searched
+         */
+        private double solveComponent(int[] cells, ArrayList<ArrayList<Integer>> constraints,
+                ArrayList<Integer> sums, int nrMinesLeft, double[] nrSafe, int[] sure){
+            int nVars = cells.length;
+            int nrFound = 0;
+            if(solverEngine == DP_ENGINE){
+                FrontierCounter counter = FrontierCounter.count(nVars, toArrays(constraints),
+                    toArray(sums), nrMinesLeft, nodeBudget, searchDeadline, token);
+                if(counter != null){
+                    return countedComponent(counter, nVars, nrSafe, sure);
+                }
+                // Too wide or over budget for the dynamic program, search it instead
+            }
+            if(cacheComponents && nVars <= maxCachedComponentSize && nVars <= SolutionCache.MAX_VARS){
+                int[] varX = new int[nVars];
+                int[] varY = new int[nVars];
+                for(int v = 0; v < nVars; v++){
+                    varX[v] = cells[v] % cols;
+                    varY[v] = cells[v] / cols;
+                }
+                int[][] cons = toArrays(constraints);
+                int[] consSums = toArray(sums);
+                int[] order = new int[nVars];
+                String key = SolutionCache.signature(varX, varY, cons, consSums, order);
+                long[] solutions = componentCache.get(key);
+                if(solutions == null){
+                    // Solve without the mine count so the entry holds for any game
+                    ArrayList<ArrayList<Integer>> found = solveLocal(nVars, constraints, sums, nVars);
+                    if(found == null){
+                        return -1;
                     }
+                    solutions = new long[found.size()];
+                    for(int s = 0; s < solutions.length; s++){
+                        for(int p = 0; p < nVars; p++){
+                            if(found.get(s).get(order[p]) == 1){
+                                solutions[s] |= 1L << p;
+                            }
+                        }
+                    }
+                    componentCache.put(key, solutions);
                 }
-                else{
-                    tmpSum+=vars.get(var);
+                for(long solution:solutions){
+                    if(Long.bitCount(solution) > nrMinesLeft){
+                        continue;
+                    }
+                    nrFound++;
+                    for(int p = 0; p < nVars; p++){
+                        if((solution & 1L << p) == 0){
+                            nrSafe[order[p]]++;
+                        }
+                    }
                 }
+                return enumerated(nrFound, nrSafe, sure);
             }
-            if(partialTest==false && tmpSum!=sum.get(index)){
-                return false;
+
+            ArrayList<ArrayList<Integer>> found = solveLocal(nVars, constraints, sums, nrMinesLeft);
+            if(found == null){
+                return -1;
             }
-            else if(partialTest &&  tmpSum>sum.get(index)){
-                return false;
+            for(ArrayList<Integer> solution:found){
+                int mines = 0;
+                for(int value:solution){
+                    mines += value;
+                }
+                if(mines > nrMinesLeft){
+                    continue;
+                }
+                nrFound++;
+                for(int v = 0; v < nVars; v++){
+                    if(solution.get(v) == 0){
+                        nrSafe[v]++;
+                    }
+                }
             }
-            else if( partialTest && tmpSum+unassigned<sum.get(index)){
-                return false;
+            return enumerated(nrFound, nrSafe, sure);
+        }
+
+        // Marks the sure cells of a component whose solutions were enumerated, the counts are exact
+        private int enumerated(int nrFound, double[] nrSafe, int[] sure){
+            for(int v = 0; v < nrSafe.length && nrFound > 0; v++){
+                if(nrSafe[v] == 0){
+                    sure[v] = 1;
+                }else if(nrSafe[v] == nrFound){
+                    sure[v] = 0;
+                }
+            }
+            return nrFound;
+        }
+
+        // All solutions of a component, or null if the search went over budget
+        private ArrayList<ArrayList<Integer>> solveLocal(int nVars,
+                ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sums, int nrMinesLeft){
+            ArrayList<Integer> unassigned = new ArrayList<>(Collections.nCopies(nVars, -1));
+            ArrayList<ArrayList<Integer>> solutions = new ArrayList<ArrayList<Integer>>();
+            nodesVisited = 0;
+            searchAborted = false;
+            cspSolver(unassigned, constraints, sums, solutions, 0, 0, nrMinesLeft);
+            moveStats.nodesVisited += nodesVisited;
+            return searchAborted ? null : solutions;
+        }
+
+        /**
+         * Estimates the safe counts of a component too large to search, by sampling
+         * solutions for samplingMillis.
+         * @param nVars number of cells in the component
+         * @param constraints constraints as lists of cell indices
+         * @param sums sum of each constraint
+         * @param nrMinesLeft mines left to assign
+         * @param nrSafe filled with the nr of samples in which each cell is safe
+         * @return the nr of samples
+         */
+        private double sampleComponent(int nVars, ArrayList<ArrayList<Integer>> constraints,
+                ArrayList<Integer> sums, int nrMinesLeft, double[] nrSafe){
+            MineSampler sampler = new MineSampler(nVars, toArrays(constraints), toArray(sums),
+                nrMinesLeft, random.nextLong());
+            sampler.run(System.nanoTime() + samplingMillis*1000000);
+            for(int v = 0; v < nVars; v++){
+                nrSafe[v] = sampler.safeCount(v);
             }
+            if(log.enabled()){log.log("Search over budget, sampled "+sampler.samples()+" solutions");}
+            return sampler.samples();
         }
-        if(partialTest && forwardChecking){
-                for(int i=firstUnassigned;i<vars.size();i++){
-                    ArrayList<Integer> l=domain(vars,constraints, sum, i, false);
-                    if(l.isEmpty()){
+
+        /**
+         * Sums the counts of a component over the mine counts that are still possible.
+         * Above 2^53 solutions the sums are rounded, a cell that is a mine in a few
+         * solutions can sum to as many safe solutions as there are in total. Whether a
+         * cell is sure is therefore decided by which counts are zero, which is exact.
+         * @param counter counts of the component
+         * @param nVars number of cells in the component
+         * @param nrSafe filled with the nr of solutions in which each cell is safe
+         * @param sure filled with 0 for cells that are a mine in no solution, 1 for cells
+         * that are safe in none
+         * @return the nr of solutions
+         */
+        private double countedComponent(FrontierCounter counter, int nVars, double[] nrSafe,
+                int[] sure){
+            double total = 0;
+            for(int k = 0; k <= counter.maxMines(); k++){
+                total += counter.solutions(k);
+            }
+            for(int v = 0; v < nVars && total > 0; v++){
+                double mines = 0;
+                for(int k = 0; k <= counter.maxMines(); k++){
+                    mines += counter.mines(v, k);
+                    nrSafe[v] += counter.safe(v, k);
+                }
+                if(mines == 0){
+                    nrSafe[v] = total;
+                    sure[v] = 0;
+                }else if(nrSafe[v] == 0){
+                    sure[v] = 1;
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Reduces the constraints to an equivalent, smaller set. Constraints over the
+         * same cells are merged, and a constraint that contains another one is
+         * replaced by the difference of the two, until no constraint contains another.
+         * @param constraints constraints as lists of fringe indices, reduced in place
+         * @param sums sum of each constraint, reduced in place
+         * @return false if two constraints contradict each other
+         */
+        private boolean reduceConstraints(ArrayList<ArrayList<Integer>> constraints,
+                ArrayList<Integer> sums){
+            int words = (nrFringe + 63) >>> 6;
+            ArrayList<long[]> sets = new ArrayList<>();
+            ArrayList<Integer> sizes = new ArrayList<>();
+            for(ArrayList<Integer> constraint:constraints){
+                long[] set = new long[words];
+                for(int var:constraint){
+                    set[var >>> 6] |= 1L << var;
+                }
+                sets.add(set);
+                sizes.add(constraint.size());
+            }
+
+            boolean changed = true;
+            while(changed){
+                changed = false;
+                // Merge duplicates, keyed by the sorted cells
+                HashMap<ArrayList<Long>, Integer> seen = new HashMap<>();
+                for(int c = 0; c < sets.size(); c++){
+                    ArrayList<Long> key = new ArrayList<>();
+                    for(long word:sets.get(c)){
+                        key.add(word);
+                    }
+                    Integer first = seen.get(key);
+                    if(first == null){
+                        seen.put(key, c);
+                        continue;
+                    }
+                    if(!sums.get(first).equals(sums.get(c))){
                         return false;
                     }
+                    sets.remove(c);
+                    sizes.remove(c);
+                    sums.remove(c);
+                    c--;
+                }
+                // Replace supersets by their difference to a subset
+                for(int a = 0; a < sets.size(); a++){
+                    for(int b = 0; b < sets.size(); b++){
+                        if(a == b || sizes.get(a) >= sizes.get(b)
+                                || !isSubset(sets.get(a), sets.get(b))){
+                            continue;
+                        }
+                        long[] difference = sets.get(b);
+                        for(int w = 0; w < words; w++){
+                            difference[w] &= ~sets.get(a)[w];
+                        }
+                        int size = sizes.get(b) - sizes.get(a);
+                        int sum = sums.get(b) - sums.get(a);
+                        if(sum < 0 || sum > size){
+                            return false;
+                        }
+                        sizes.set(b, size);
+                        sums.set(b, sum);
+                        changed = true;
+                    }
                 }
             }
-        return true;
-    } 
-   /**
-   * Get domain.
-   * @param assigned	assigned fringe cells
-   * @param constraints        constraints
-   * @param sum     sum for constraints
-   * @param index index for var to check domain
-   * @param forward boolean, forward checking wanted
-   * @return domainList 
-   */
-        public ArrayList<Integer> domain(ArrayList<Integer> assigned, 
-            ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sum, 
-            int index, boolean forward){
-        ArrayList<Integer> domainList = new ArrayList();
-        ArrayList<Integer> nextAssignment=  new ArrayList<>(assigned);
-        for(int i=0; i<2;i++){
-            nextAssignment.set(index, i);
-            if(constraintSatisfied(nextAssignment,constraints, sum, forward)){
-                domainList.add(i);
-            }
-        } 
-        return domainList;
-        
-    }
 
-    /**
-     *
-     * @param originalList the original cells as a ArrayList of cells
-     * @param subtractList the cells you want to subtract from the original cells
-     * @return the subtracted ArrayList
-     */
-    public ArrayList<Cell> subtractCells(ArrayList<Cell> originalList, ArrayList<Cell> subtractList){
-        ArrayList<Cell> returnList = new ArrayList<Cell>(originalList);
-        for(Cell removeCell:subtractList){
-            for(Cell origCell:originalList){
-                if(origCell.equals(removeCell)){
-                    returnList.remove(origCell);
-                    break;
+            constraints.clear();
+            for(long[] set:sets){
+                ArrayList<Integer> constraint = new ArrayList<>();
+                for(int w = 0; w < words; w++){
+                    for(long bits = set[w]; bits != 0; bits &= bits - 1){
+                        constraint.add((w << 6) + Long.numberOfTrailingZeros(bits));
+                    }
                 }
+                constraints.add(constraint);
             }
+            return true;
         }
-        return returnList;
-    }
 
-    /**
-     *
-     * @param cellList get random cell from ArrayList
-     * @return random cell
-     */
-    public Cell getRandomCell(ArrayList<Cell> cellList){
-
-        if(prioritizeCorners){
-            // Try corners first
-            int[][] cornerCoords = {{0,0},{0,rows-1},{cols-1,0},{cols-1,rows-1}};
-            for(int[] coords:cornerCoords){
-                for(Cell currentCell:cellList){
-                    if(currentCell.x == coords[0] && currentCell.y == coords[1]){
-                        return currentCell;
+
+
+
+
+        /**
+         * Starts a game: sets up the board size, resets the game counters and
+         * takes the token. The random guesses and the sampler are seeded from
+         * the Map, so a seeded board is played the same way again.
+         * @param m Map
+         * @param token token of the game, null if it can't be cancelled
+         */
+        void start(Map m, CancellationToken token){
+            prepare(m.rows(), m.columns());
+            random.setSeed((long)m.pick(1 << 30) << 30 ^ m.pick(1 << 30));
+            gameStats.reset(rows, cols);
+            this.token = token;
+        }
+
+        // Sets the board size and builds the tables for it, for a game or a single move
+        void prepare(int rows, int cols){
+            // A cancelled game can leave moves queued
+            for(int i = 0; i < nrQueued; i++){
+                int id = queuedMoves[i] >>> 1;
+                queuedBits[id >>> 6] &= ~(1L << id);
+            }
+            nrQueued = 0;
+            token = null;
+            this.rows = rows;
+            this.cols = cols;
+            buildTables();
+            jfrEnabled = JFR != null;
+            instrumented = listener != null || jfrEnabled;
+        }
+
+        /**
+         * Builds the neighbor tables and cell sets for the current board size,
+         * unless already built.
+         */
+        private void buildTables(){
+            if(rows == tableRows && cols == tableCols){
+                return;
+            }
+            tableRows = rows;
+            tableCols = cols;
+            fringeCells = new int[rows*cols];
+            fringeIndex = new int[rows*cols];
+            fringeBits = new long[(rows*cols + 63) >>> 6];
+            unprobedCells = new int[rows*cols];
+            unprobedBits = new long[(rows*cols + 63) >>> 6];
+            cornerCells = new int[]{0, (rows - 1)*cols, cols - 1, rows*cols - 1};
+            board = new int[rows*cols];
+            queuedMoves = new int[rows*cols];
+            queuedBits = new long[(rows*cols + 63) >>> 6];
+            nrQueued = 0;
+            neighborTable = new int[rows*cols*NEIGHBORS];
+            neighborCount = new int[rows*cols];
+            nearbyTable = new int[rows*cols*NEARBY];
+            nearbyCount = new int[rows*cols];
+            for(int y = 0; y < rows; y++){
+                for(int x = 0; x < cols; x++){
+                    int id = y*cols + x;
+                    for(int dy = -2; dy <= 2; dy++){
+                        for(int dx = -2; dx <= 2; dx++){
+                            int nx = x + dx;
+                            int ny = y + dy;
+                            if((dx == 0 && dy == 0) || nx < 0 || nx >= cols || ny < 0 || ny >= rows){
+                                continue;
+                            }
+                            nearbyTable[id*NEARBY + nearbyCount[id]++] = ny*cols + nx;
+                            if(Math.abs(dx) < 2 && Math.abs(dy) < 2){
+                                neighborTable[id*NEIGHBORS + neighborCount[id]++] = ny*cols + nx;
+                            }
+                        }
                     }
                 }
             }
         }
 
-        // No corner cell is unprobed, return completely random cell
-        return cellList.get(new Random().nextInt(cellList.size()));
+        /**
+         * Reads the whole visible board into the shadow board. Only needed once per
+         * game, after that probe and mark keep it in sync from their return values.
+         * @param m Map
+         */
+        private void readBoard(Map m){
+            for(int y = 0; y < rows; y++){
+                for(int x = 0; x < cols; x++){
+                    board[y*cols + x] = m.look(x, y);
+                }
+            }
+        }
 
-    }
+        /**
+         * Probes a cell and records the result in the shadow board.
+         * @param m Map
+         * @param id cell id, y*cols + x
+         * @return what m.probe returned
+         */
+        private int probe(Map m, int id){
+            return board[id] = m.probe(id % cols, id / cols);
+        }
 
-}
+        /**
+         * Marks a cell and records the result in the shadow board.
+         * @param m Map
+         * @param id cell id, y*cols + x
+         * @return what m.mark returned
+         */
+        private int mark(Map m, int id){
+            return board[id] = m.mark(id % cols, id / cols);
+        }
+
+        /**
+         * Counts the neighbors of a cell by state in one pass, without allocating.
+         * Sets nrUnprobedNeighbors and nrMarkedNeighbors and leaves the ids of the
+         * unprobed ones first in unprobedNeighbors.
+         * @param id cell id, y*cols + x
+         */
+        private void scanNeighbors(int id){
+            nrUnprobedNeighbors = 0;
+            nrMarkedNeighbors = 0;
+            for(int k = id*NEIGHBORS, end = k + neighborCount[id]; k < end; k++){
+                int neighbor = neighborTable[k];
+                if(board[neighbor] == UNPROBED){
+                    unprobedNeighbors[nrUnprobedNeighbors++] = neighbor;
+                }else if(board[neighbor] == MARKED){
+                    nrMarkedNeighbors++;
+                }
+            }
+        }
+
+        /**
+         *finds if there are cleared cells within distance 2
+         * @param id cell id, y*cols + x
+         * @return boolean
+         */
+        private boolean clearedCellsNearby(int id){
+            for(int k = id*NEARBY, end = k + nearbyCount[id]; k < end; k++){
+                if(board[nearbyTable[k]] >= 0){
+                    return true;
+                }
+            }
+            return false;
+        }
+    
+       /**
+     * Loops finds all possible solutions and stores them in a solution Array list  
+     * @param fringeAssignment as ArrayList Integer
+     * @param constraints  as ArrayList ArrayList Integer
+     * @param constraintSums ArrayList Integer 
+         * @param solutions the solution ArrayList
+     * @param index index for next assignment
+         * @param assignedMines number of assigned mines
+         * @param nrMinesLeft mines left to assign
+     */
+        public void cspSolver(ArrayList<Integer> fringeAssignment, 
+                ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> constraintSums, 
+                ArrayList<ArrayList<Integer>> solutions, int index, int assignedMines, 
+                int nrMinesLeft){
+
+            // Give up once over the node or time budget, stop if the game is cancelled
+            nodesVisited++;
+            if(token != null && (nodesVisited & 1023) == 0){
+                token.check();
+            }
+            if(searchAborted || nodeBudget > 0 && nodesVisited > nodeBudget
+                || searchDeadline != 0 && (nodesVisited & 1023) == 0 && System.nanoTime() - searchDeadline > 0){
+                searchAborted = true;
+                return;
+            }
 
+            // Base case
+            if(fringeAssignment.get(fringeAssignment.size()-1) != -1){
+                if(constraintSatisfied(fringeAssignment, constraints, constraintSums, false)){
+                    solutions.add(fringeAssignment);
+                }
+                return;
+            }
 
+            ArrayList<Integer> nextAssignment;
+            for(int i=0; i<2; i++){
+                nextAssignment = new ArrayList<>(fringeAssignment);
+                nextAssignment.set(index, i);
 
-class Cell{
-    public int x; // x idx of the cell
-    public int y; // y idx of the cell
-    public int flag; // same notation as in Map (-3 ==> marked, -2 ==> unprobed etc)
+                if(constraintSatisfied(nextAssignment, 
+                    constraints, constraintSums, true) && assignedMines<=nrMinesLeft){
+                    // Only go deeper if current assignment does not break constraints
+                    cspSolver(nextAssignment, constraints, constraintSums, 
+                        solutions, index+1, assignedMines+i, nrMinesLeft);
+                }
+            }
 
-    public Cell(int inputX, int inputy, int inputFlag){
-        x = inputX;
-        y = inputy;
-        flag = inputFlag;
-    }
+        }
+    
+        /**
+     * Loops through the constraints and checks if they are satisfied: 
+     * @param vars as ArrayList
+     * @param constraints ArrayList
+     * @param sum ArrayList
+         * @param forwardChecking
+     * @return boolean
+     */
+        public boolean constraintSatisfied(ArrayList<Integer> vars, 
+                ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sum,
+                boolean forwardChecking){
 
-    public boolean equals(Cell otherCell){
-        // returns true if x and y are the same
-        if(x == otherCell.x && y == otherCell.y){
+            int tmpSum;
+            boolean partialTest;
+            int unassigned;
+            partialTest=false;
+            int firstUnassigned=0;
+            for(int index=0;index<constraints.size();index++){
+                tmpSum=0;
+                unassigned=0;
+                for(int var:constraints.get(index)){
+                    if(vars.get(var)==-1){
+                        partialTest=true;
+                        unassigned++;
+                        if(firstUnassigned==0){
+                            firstUnassigned=var;
+                        }
+                    }
+                    else{
+                        tmpSum+=vars.get(var);
+                    }
+                }
+                if(partialTest==false && tmpSum!=sum.get(index)){
+                    return false;
+                }
+                else if(partialTest &&  tmpSum>sum.get(index)){
+                    return false;
+                }
+                else if( partialTest && tmpSum+unassigned<sum.get(index)){
+                    return false;
+                }
+            }
+            if(partialTest && forwardChecking){
+                    for(int i=firstUnassigned;i<vars.size();i++){
+                        ArrayList<Integer> l=domain(vars,constraints, sum, i, false);
+                        if(l.isEmpty()){
+                            return false;
+                        }
+                    }
+                }
             return true;
-        }else{
-            return false;
+        } 
+       /**
+       * Get domain.
+       * @param assigned	assigned fringe cells
+       * @param constraints        constraints
+       * @param sum     sum for constraints
+       * @param index index for var to check domain
+       * @param forward boolean, forward checking wanted
+       * @return domainList 
+       */
+            public ArrayList<Integer> domain(ArrayList<Integer> assigned, 
+                ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sum, 
+                int index, boolean forward){
+            ArrayList<Integer> domainList = new ArrayList();
+            ArrayList<Integer> nextAssignment=  new ArrayList<>(assigned);
+            for(int i=0; i<2;i++){
+                nextAssignment.set(index, i);
+                if(constraintSatisfied(nextAssignment,constraints, sum, forward)){
+                    domainList.add(i);
+                }
+            } 
+            return domainList;
+        
+        }
+
+        /**
+         * Picks an unprobed cell from the last scan of the board, a corner if
+         * prioritizeCorners is set and one is free.
+         * @param excludeFringe only pick cells outside the fringe
+         * @return id of the cell
+         */
+        public int getRandomCell(boolean excludeFringe){
+
+            if(prioritizeCorners){
+                // Try corners first
+                for(int corner:cornerCells){
+                    if(isUnprobed(corner) && !(excludeFringe && isFringe(corner))){
+                        return corner;
+                    }
+                }
+            }
+
+            // No corner cell is unprobed, return completely random cell
+            int n = random.nextInt(excludeFringe ? nrUnprobed - nrFringe : nrUnprobed);
+            for(int i = 0; i < nrUnprobed; i++){
+                if(excludeFringe && isFringe(unprobedCells[i])){
+                    continue;
+                }
+                if(n-- == 0){
+                    return unprobedCells[i];
+                }
+            }
+            throw new IllegalStateException("no unprobed cell");
+        }
+
+        private boolean isUnprobed(int id){
+            return (unprobedBits[id >>> 6] & 1L << id) != 0;
+        }
+
+        private boolean isFringe(int id){
+            return (fringeBits[id >>> 6] & 1L << id) != 0;
         }
     }
-}
\ No newline at end of file
+}
@@ -37,7 +37,7 @@ Boston, MA 02111-1307, USA.
  */
 public class PGMS extends Applet {
   // The default strategy
-  private static String default_strategy_name = "OurStrategy";
+  private static String default_strategy_name = GameOptions.DEFAULT_STRATEGY;
   Strategy s;			// The selected strategy
   int mines = 10;		// Beginner game
   int rows = 8;
@@ -55,10 +55,46 @@ public class PGMS extends Applet {
    * <dt> <code>-e</code>
    * <dd> play an expert game
    * <dt> <code>-s</code> <var>strategy class name</var>
-   * <dd> play with given strategy
+   * <dd> play with given strategy, public fields of the strategy can be
+   * set as in <code>OurStrategy:goodGuessing=false,lookaheadCandidates=1</code>.
+   * Given more than once, every strategy plays the same boards in a tournament
    * <dt> <code>-n</code> <var>number of games</var>
    * <dd> play multiple games - graphics will be disabled
-   * with more than one game
+   * with more than one game, and the games are played by
+   * the HeadlessRunner
+   * <dt> <code>-threads</code> <var>number of threads</var>
+   * <dd> play the games on this many worker threads,
+   * each with its own strategy instance
+   * <dt> <code>-virtual</code>
+   * <dd> play every game on its own virtual thread, if available,
+   * with as many in flight as the larger of the number of threads
+   * and processors
+   * <dt> <code>-report</code> <var>seconds</var>
+   * <dd> print a summary of multiple games this often,
+   * 0 for only at the end
+   * <dt> <code>-verbose</code>
+   * <dd> keep the messages of the strategy with multiple games
+   * <dt> <code>-export</code> <var>file</var>
+   * <dd> write the win counts and the histograms of time per game,
+   * time per move and CSP nodes per move of multiple games to the
+   * file, as JSON if it ends with .json and CSV otherwise; moves
+   * are only timed when this is given
+   * <dt> <code>-seed</code> <var>seed</var>
+   * <dd> play game n of multiple games on the board of seed + n,
+   * <code>java HeadlessRunner -seed</code> <var>s</var> <code>-n 1</code>
+   * replays the board of seed s
+   * <dt> <code>-timeout</code> <var>milliseconds</var>
+   * <dd> cancel a game of multiple games that takes longer, timed
+   * out games are counted apart and their seeds printed
+   * <dt> <code>-precision</code> <var>fraction</var>
+   * <dd> stop multiple games before <code>-n</code> once the 95% interval
+   * of the win rate, or with several strategies every interval of their
+   * paired differences, is within this fraction of its center
+   * <dt> <code>-log</code> <var>file</var>
+   * <dd> append the seed, outcome, moves and time of every game of
+   * multiple games to the file; a run given an existing log resumes it,
+   * skipping the games in it, and <code>java ResultsLog</code>
+   * <var>file</var> prints its totals
    * </dl>
    */
   public static void main(String args[]) {
@@ -74,125 +110,52 @@ public class PGMS extends Applet {
     //System.out.println(test.meetsConstraints(v,c,sum));
     
 
-    String strategy_name = default_strategy_name;
-    String game_name = "beginner";
-    int mines = 10;		// Beginner game
-    int rows = 8;
-    int columns = 8;
-    int tries = 1;
-    int wins = 0;
-    int probed = 0;
-
-    for (int i = 0; i < args.length; i++) // Process args
-      if (args[i].equals("-i")) {
-	game_name = "intermediate";
-	mines = 40;			// Intermediate game
-	rows = 13;
-	columns = 15;
-      }
-      else if (args[i].equals("-e")) {
-	game_name = "expert";
-	mines = 99;			// Expert game
-	rows = 16;
-	columns = 30;
-      }
-      else if (args[i].equals("-b")) {
-	game_name = "beginner";
-	mines = 10;			// Beginner game
-	rows = 8;
-	columns = 8;
-      }
-      else if (args[i].equals("-s"))
-	if (++i >= args.length) { // User supplied strategy
-	  usage();
-	  return;
-	}
-	else
-	  strategy_name = args[i];
-      else if (args[i].equals("-n"))
-	if (++i >= args.length) { // Game count supplied
-	  usage();
-	  return;
-	}
-	else
-	  try {
-	    tries = Math.max(1, Integer.parseInt(args[i]));
-	  }
-    catch (NumberFormatException e) {
-      System.out.println("Bad number of games");
-      usage();
+    GameOptions o = GameOptions.parse(args);
+    if (o == null)
+      return;
+
+    if (o.tries > 1 || o.threads > 0 || o.strategies.size() > 1) { // Batch, no graphics
+      HeadlessRunner.run(o);
       return;
     }
-      else {
-	usage();
-	return;
-      }
 
     Strategy s;
     try {
-      s = (Strategy)Class.forName(strategy_name).newInstance();
+      s = GameOptions.newStrategy(o.strategyName);
     } catch (Exception e) {
-      System.out.println("Cannot create strategy " + strategy_name);
-      usage();
+      System.out.println("Cannot create strategy " + o.strategyName);
+      GameOptions.usage();
       return;
     }
 
-    if (tries == 1) {
-      Frame f = new Frame("PGMS");
-      f.addWindowListener(new WindowAdapter() {
-	public void windowClosing(WindowEvent e) {
-	  System.exit(0);
-	}
-      });
-
-      PGMS p = new PGMS(s, mines, rows, columns);
-
-      MenuBar mb = new MenuBar();
-      f.setMenuBar(mb);
-      Menu m = new Menu("File");
-      mb.add(m);
-      MenuItem mi = new MenuItem("Exit", new MenuShortcut(KeyEvent.VK_X));
-      mi.addActionListener(new ActionListener() {
-	public void actionPerformed(ActionEvent e) {
-	  System.exit(0);
-	}
-      });
-      m.add(mi);
-
-      p.init_display(strategy_name);
-
-      f.add(p);
-      f.pack();
-      f.setVisible(true);
-
-      p.start();
-      return;
-    }
+    Frame f = new Frame("PGMS");
+    f.addWindowListener(new WindowAdapter() {
+      public void windowClosing(WindowEvent e) {
+	System.exit(0);
+      }
+    });
 
-    System.out.print("Playing " + tries + " " + game_name + " games");
-    System.out.println(" using strategy " + strategy_name);
+    PGMS p = new PGMS(s, o.mines, o.rows, o.columns);
 
-    for (int n = 1; n <= tries; n++) {
-      Map m = new MineMap(mines, rows, columns); // Create mine map
-      try {
-	s.play(m);			// Play game
-      } catch (Exception e) {
-	System.out.println(e.toString());
+    MenuBar mb = new MenuBar();
+    f.setMenuBar(mb);
+    Menu m = new Menu("File");
+    mb.add(m);
+    MenuItem mi = new MenuItem("Exit", new MenuShortcut(KeyEvent.VK_X));
+    mi.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+	System.exit(0);
       }
-      if (m.won()) wins++;	// Record results
-      if (m.probed()) probed++;
-      System.out.print(wins
-		       + " wins in "
-		       + n
-		       + " tries -- "
-		       + percent(wins, n));
-      if (probed > 0)
-	System.out.print("%, with "
-			 + probed
-			 + " standard tries -- "
-			 + percent(wins, probed));
-      System.out.println("%.");
-    }
+    });
+    m.add(mi);
+
+    p.init_display(o.strategyName);
+
+    f.add(p);
+    f.pack();
+    f.setVisible(true);
+
+    p.start();
   }
 
   /**
@@ -205,18 +168,6 @@ public class PGMS extends Applet {
     this.columns = columns;
   }
 
-  private static int percent(int n, int d) {
-    return (200 * n + d) / (2 * d);
-  }
-
-  private static void usage() {
-    System.out.println("Usage: java PGMS [-b] [-i] [-e]"
-		       + " [-s strategy_name] [-n number_of_games]");
-    System.out.println("Beginner:     -b");
-    System.out.println("Intermediate: -i");
-    System.out.println("Expert:       -e");
-  }
-
   /**
    * Create applet PGMS
    */
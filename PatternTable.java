@@ -0,0 +1,428 @@
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Table of cells forced by their local surroundings, for instant deductions
+ * of the common wall and corner patterns. The 5x5 window around an unprobed
+ * cell is encoded in a long: the eight neighbors as effective numbers
+ * (number minus marked neighbors) or unprobed, the outer ring as unprobed or
+ * not. The window is taken in the smallest of its eight rotations and
+ * reflections. The table is generated offline by main, which plays games,
+ * collects the windows that show up and keeps those whose center is forced
+ * by the constraints inside the window alone, so every entry is sound.
+ * @author joar
+ */
+public final class PatternTable {
+
+    /**
+     * Value of a cell that the window does not decide
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * Length of the scratch buffer of forced and key
+     */
+    public static final int SCRATCH = 25;
+
+    private static final int MAGIC = 0x50415454; // "PATT"
+    private static final int SIZE = 5; // Window width
+    private static final int CENTER = 12; // Index of the center in the window
+    private static final int UNPROBED_CODE = 9; // Code of an unprobed neighbor
+    private static final int OTHER_CODE = 10; // Code of a marked, outside or broken neighbor
+
+    // Window indices of the eight neighbors and of the outer ring, in key order
+    private static final int[] INNER = {6, 7, 8, 11, 13, 16, 17, 18};
+    private static final int[] OUTER = {0, 1, 2, 3, 4, 5, 9, 10, 14, 15, 19, 20, 21, 22, 23, 24};
+
+    // Window index each index is moved to by the eight rotations and reflections
+    private static final int[][] TRANSFORMS = transforms();
+
+    // Window index each index is moved from by the eight rotations and reflections
+    private static final int[][] INVERSES = inverses(TRANSFORMS);
+
+    private final long[] entries; // Sorted, key << 1 | 1 if the center is a mine
+
+    private PatternTable(long[] entries){
+        this.entries = entries;
+    }
+
+    /**
+     * Loads a table stored by main from a resource next to this class.
+     * @param name resource name
+     * @return the table, empty if the resource is missing or unreadable
+     */
+    public static PatternTable load(String name){
+        InputStream in = PatternTable.class.getResourceAsStream(name);
+        if(in == null){
+            return new PatternTable(new long[0]);
+        }
+        try(DataInputStream data = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(in)))){
+            if(data.readInt() != MAGIC){
+                return new PatternTable(new long[0]);
+            }
+            long[] entries = new long[data.readInt()];
+            long previous = 0;
+            for(int i = 0; i < entries.length; i++){
+                previous += data.readLong(); // Stored as differences
+                entries[i] = previous;
+            }
+            return new PatternTable(entries);
+        }catch(IOException e){
+            return new PatternTable(new long[0]);
+        }
+    }
+
+    /**
+     * @return number of patterns in the table
+     */
+    public int size(){
+        return entries.length;
+    }
+
+    /**
+     * Looks up an unprobed cell.
+     * @param board what look returns for each cell id, y*cols + x
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param id cell id
+     * @return 0 if the cell is safe, 1 if it is a mine, UNKNOWN otherwise
+     */
+    public int forced(int[] board, int rows, int cols, int id){
+        return forced(board, rows, cols, id, new int[SCRATCH]);
+    }
+
+    /**
+     * Looks up an unprobed cell without allocating.
+     * @param board what look returns for each cell id, y*cols + x
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param id cell id
+     * @param scratch SCRATCH ints of the caller's own, overwritten
+     * @return 0 if the cell is safe, 1 if it is a mine, UNKNOWN otherwise
+     */
+    public int forced(int[] board, int rows, int cols, int id, int[] scratch){
+        if(entries.length == 0){
+            return UNKNOWN;
+        }
+        long key = key(board, rows, cols, id, scratch);
+        int i = Arrays.binarySearch(entries, key << 1);
+        if(i < 0){
+            i = -i - 1;
+        }
+        if(i < entries.length && entries[i] >>> 1 == key){
+            return (int)(entries[i] & 1);
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Computes the canonical key of the window around a cell.
+     * @param board what look returns for each cell id, y*cols + x
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param id cell id
+     * @return the key
+     */
+    public static long key(int[] board, int rows, int cols, int id){
+        return key(board, rows, cols, id, new int[SCRATCH]);
+    }
+
+    /**
+     * Computes the canonical key of the window around a cell without allocating.
+     * @param board what look returns for each cell id, y*cols + x
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param id cell id
+     * @param codes SCRATCH ints of the caller's own, overwritten with the window
+     * @return the key
+     */
+    public static long key(int[] board, int rows, int cols, int id, int[] codes){
+        int x = id % cols;
+        int y = id / cols;
+        for(int w = 0; w < SIZE*SIZE; w++){
+            int wx = x + w % SIZE - 2;
+            int wy = y + w / SIZE - 2;
+            int value = wx < 0 || wx >= cols || wy < 0 || wy >= rows
+                ? Map.OUT_OF_BOUNDS : board[wy*cols + wx];
+            if(value == Map.UNPROBED){
+                codes[w] = UNPROBED_CODE;
+            }else if(value < 0 || Math.abs(w % SIZE - 2) == 2 || Math.abs(w / SIZE - 2) == 2){
+                codes[w] = OTHER_CODE;
+            }else{
+                // Effective number of a neighbor, its neighbors are all in bounds of the window
+                for(int dy = -1; dy <= 1; dy++){
+                    for(int dx = -1; dx <= 1; dx++){
+                        int nx = wx + dx;
+                        int ny = wy + dy;
+                        if(nx >= 0 && nx < cols && ny >= 0 && ny < rows
+                                && board[ny*cols + nx] == Map.MARKED){
+                            value--;
+                        }
+                    }
+                }
+                codes[w] = value < 0 ? OTHER_CODE : value;
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for(int[] from:INVERSES){
+            best = Math.min(best, encode(codes, from));
+        }
+        return best;
+    }
+
+    /**
+     * Decides the center of a window from the constraints of its neighbors.
+     * @param key window key
+     * @return 0 if the center is safe, 1 if it is a mine, UNKNOWN otherwise
+     */
+    public static int solve(long key){
+        int[] codes = decode(key);
+        int[] variable = new int[SIZE*SIZE]; // Variable index of each window index, -1 if none
+        Arrays.fill(variable, -1);
+        int nVars = 0;
+        for(int w = 0; w < codes.length; w++){
+            if(codes[w] == UNPROBED_CODE){
+                variable[w] = nVars++;
+            }
+        }
+        ArrayList<int[]> constraints = new ArrayList<>();
+        ArrayList<Integer> sums = new ArrayList<>();
+        for(int w:INNER){
+            if(codes[w] > 8){
+                continue;
+            }
+            ArrayList<Integer> vars = new ArrayList<>();
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    int n = w + dy*SIZE + dx;
+                    if((dx != 0 || dy != 0) && variable[n] >= 0){
+                        vars.add(variable[n]);
+                    }
+                }
+            }
+            int[] array = new int[vars.size()];
+            for(int i = 0; i < array.length; i++){
+                array[i] = vars.get(i);
+            }
+            constraints.add(array);
+            sums.add(codes[w]);
+        }
+        int[] value = new int[nVars];
+        int center = variable[CENTER];
+        boolean safe = feasible(center, 0, value, constraints, sums);
+        boolean mine = feasible(center, 1, value, constraints, sums);
+        if(safe == mine){
+            return UNKNOWN;
+        }
+        return mine ? 1 : 0;
+    }
+
+    /**
+     * Generates the table by playing games and writes it to a file.
+     * Arguments: number of games, output file, min times a window must be seen.
+     * @param args command line arguments
+     * @throws IOException if the file can not be written
+     */
+    public static void main(String[] args) throws IOException{
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String file = args.length > 1 ? args[1] : "patterns.bin";
+        int minCount = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        final HashMap<Long, int[]> seen = new HashMap<>();
+        OurStrategy s = new OurStrategy();
+        s.log = LogSink.NONE;
+        s.usePatterns = false;
+        int[][] sizes = {{10, 8, 8}, {40, 16, 16}, {99, 16, 30}};
+        for(int game = 0; game < games; game++){
+            int[] size = sizes[game % sizes.length];
+            s.play(new Recorder(new MineMap(size[0], size[1], size[2]), seen));
+        }
+
+        ArrayList<Long> entries = new ArrayList<>();
+        for(java.util.Map.Entry<Long, int[]> e:seen.entrySet()){
+            if(e.getValue()[0] < minCount){
+                continue;
+            }
+            int forced = solve(e.getKey());
+            if(forced != UNKNOWN){
+                entries.add(e.getKey() << 1 | forced);
+            }
+        }
+        Collections.sort(entries);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))))){
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            long previous = 0;
+            for(long entry:entries){
+                out.writeLong(entry - previous);
+                previous = entry;
+            }
+        }
+        System.out.println(seen.size() + " windows seen, " + entries.size()
+            + " forced patterns written to " + file);
+    }
+
+    // Is there an assignment with the variable v set to x, satisfying all constraints
+    private static boolean feasible(int v, int x, int[] value, ArrayList<int[]> constraints,
+            ArrayList<Integer> sums){
+        Arrays.fill(value, -1);
+        value[v] = x;
+        return search(0, value, constraints, sums);
+    }
+
+    private static boolean search(int next, int[] value, ArrayList<int[]> constraints,
+            ArrayList<Integer> sums){
+        for(int c = 0; c < constraints.size(); c++){
+            int assigned = 0;
+            int open = 0;
+            for(int v:constraints.get(c)){
+                if(value[v] < 0){
+                    open++;
+                }else{
+                    assigned += value[v];
+                }
+            }
+            if(assigned > sums.get(c) || assigned + open < sums.get(c)){
+                return false;
+            }
+        }
+        while(next < value.length && value[next] >= 0){
+            next++;
+        }
+        if(next == value.length){
+            return true;
+        }
+        for(int x = 0; x < 2; x++){
+            value[next] = x;
+            if(search(next + 1, value, constraints, sums)){
+                return true;
+            }
+        }
+        value[next] = -1;
+        return false;
+    }
+
+    // Key of the window moved by a transform, given as the index each index is moved from
+    private static long encode(int[] codes, int[] from){
+        long key = 0;
+        for(int i = 0; i < INNER.length; i++){
+            key |= (long)codes[from[INNER[i]]] << 4*i;
+        }
+        for(int i = 0; i < OUTER.length; i++){
+            if(codes[from[OUTER[i]]] == UNPROBED_CODE){
+                key |= 1L << 32 + i;
+            }
+        }
+        return key;
+    }
+
+    private static int[] decode(long key){
+        int[] codes = new int[SIZE*SIZE];
+        Arrays.fill(codes, OTHER_CODE);
+        codes[CENTER] = UNPROBED_CODE;
+        for(int i = 0; i < INNER.length; i++){
+            codes[INNER[i]] = (int)(key >>> 4*i & 15);
+        }
+        for(int i = 0; i < OUTER.length; i++){
+            if((key >>> 32 + i & 1) == 1){
+                codes[OUTER[i]] = UNPROBED_CODE;
+            }
+        }
+        return codes;
+    }
+
+    private static int[][] transforms(){
+        int[][] matrices = {
+            {1, 0, 0, 1}, {-1, 0, 0, 1}, {1, 0, 0, -1}, {-1, 0, 0, -1},
+            {0, 1, 1, 0}, {0, -1, 1, 0}, {0, 1, -1, 0}, {0, -1, -1, 0}
+        };
+        int[][] transforms = new int[matrices.length][SIZE*SIZE];
+        for(int t = 0; t < matrices.length; t++){
+            int[] a = matrices[t];
+            for(int w = 0; w < SIZE*SIZE; w++){
+                int dx = w % SIZE - 2;
+                int dy = w / SIZE - 2;
+                transforms[t][w] = (a[2]*dx + a[3]*dy + 2)*SIZE + a[0]*dx + a[1]*dy + 2;
+            }
+        }
+        return transforms;
+    }
+
+    private static int[][] inverses(int[][] transforms){
+        int[][] inverses = new int[transforms.length][SIZE*SIZE];
+        for(int t = 0; t < transforms.length; t++){
+            for(int w = 0; w < SIZE*SIZE; w++){
+                inverses[t][transforms[t][w]] = w;
+            }
+        }
+        return inverses;
+    }
+
+    /*
+     * Map that counts the windows around the unprobed cells next to a number
+     * after every move of the game it wraps.
+     */
+    private static final class Recorder implements Map {
+
+        private final Map m;
+        private final HashMap<Long, int[]> seen;
+        private final int[] board;
+
+        Recorder(Map m, HashMap<Long, int[]> seen){
+            this.m = m;
+            this.seen = seen;
+            board = new int[m.rows()*m.columns()];
+        }
+
+        private int record(int result){
+            int cols = m.columns();
+            for(int id = 0; id < board.length; id++){
+                board[id] = m.look(id % cols, id / cols);
+            }
+            for(int id = 0; id < board.length; id++){
+                if(board[id] == UNPROBED && nextToNumber(id, cols)){
+                    long key = key(board, m.rows(), cols, id);
+                    int[] count = seen.get(key);
+                    if(count == null){
+                        seen.put(key, new int[]{1});
+                    }else{
+                        count[0]++;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private boolean nextToNumber(int id, int cols){
+            int x = id % cols;
+            int y = id / cols;
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if(nx >= 0 && nx < cols && ny >= 0 && ny < m.rows()
+                            && board[ny*cols + nx] > 0){
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override public boolean won(){ return m.won(); }
+        @Override public boolean done(){ return m.done(); }
+        @Override public boolean probed(){ return m.probed(); }
+        @Override public int probe(int x, int y){ return record(m.probe(x, y)); }
+        @Override public int look(int x, int y){ return m.look(x, y); }
+        @Override public int mark(int x, int y){ return record(m.mark(x, y)); }
+        @Override public int unmark(int x, int y){ return record(m.unmark(x, y)); }
+        @Override public int mines_minus_marks(){ return m.mines_minus_marks(); }
+        @Override public int rows(){ return m.rows(); }
+        @Override public int columns(){ return m.columns(); }
+        @Override public void display(){ m.display(); }
+        @Override public int pick(int n){ return m.pick(n); }
+    }
+}
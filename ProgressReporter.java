@@ -0,0 +1,436 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the results of a batch of games in memory and prints a summary
+ * line at a fixed interval, and once more when closed, instead of a line
+ * per game. Games record their results in striped counters from any
+ * thread; only the reporting thread formats and writes, through a
+ * buffered writer that is flushed once per summary.
+ * <p>
+ * Each thread can also take a Recorder, which keeps histograms of the time
+ * per game and, for OurStrategy when asked for, the time and CSP nodes per
+ * move. They are added together when the batch is exported as CSV or JSON.
+ * Timing every move costs, so a reporter that is not asked for the move
+ * histograms leaves the strategies without a listener.
+ * @author joar
+ */
+public final class ProgressReporter implements Closeable {
+
+    private final Writer out;
+    private final boolean moveHistograms; // Recorders listen to the moves of their strategy
+    private final long start = System.nanoTime();
+    private final LongAdder played = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder probed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final ConcurrentLinkedQueue<Long> timedOutSeeds = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService timer;
+    private final ArrayList<Recorder> recorders = new ArrayList<>();
+    private volatile ResultsLog log; // Where the recorders append games, null for nowhere
+    private volatile long resumed; // Games restored from the log, not played by this run
+    private final LogSink messages = new LogSink(){
+        @Override
+        public boolean enabled(){
+            return true;
+        }
+
+        @Override
+        public void log(String message){
+            write(message);
+        }
+    };
+
+    /**
+     * Creates a reporter without move histograms and starts its timer.
+     * @param out where the summaries go, buffered by the reporter
+     * @param intervalMillis time between summaries, 0 for only the final one
+     */
+    public ProgressReporter(OutputStream out, long intervalMillis){
+        this(out, intervalMillis, false);
+    }
+
+    /**
+     * Creates a reporter and starts its timer.
+     * @param out where the summaries go, buffered by the reporter
+     * @param intervalMillis time between summaries, 0 for only the final one
+     * @param moveHistograms time every move of the strategies the recorders listen to
+     */
+    public ProgressReporter(OutputStream out, long intervalMillis, boolean moveHistograms){
+        this.out = new BufferedWriter(new OutputStreamWriter(out), 1 << 12);
+        this.moveHistograms = moveHistograms;
+        if(intervalMillis > 0){
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r){
+                    Thread t = new Thread(r, "progress-reporter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            timer.scheduleAtFixedRate(new Runnable(){
+                @Override
+                public void run(){
+                    report();
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records the result of a finished game.
+     * @param m the map of the game
+     */
+    public void record(Map m){
+        record(m.won(), m.probed());
+    }
+
+    /**
+     * Records the result of a finished game.
+     * @param won true if the game was won
+     * @param probed true if the first probe was not a mine
+     */
+    public void record(boolean won, boolean probed){
+        if(won){
+            wins.increment();
+        }
+        if(probed){
+            this.probed.increment();
+        }
+        played.increment();
+    }
+
+    /**
+     * Records a game that was cancelled before it was done, neither won nor lost.
+     * @param seed seed of the board, to replay the game
+     */
+    public void timeout(long seed){
+        timedOutSeeds.add(seed);
+        timeouts.increment();
+        played.increment();
+    }
+
+    /**
+     * Makes the recorders append every game they record from now on to a log,
+     * and skip the games that were in it.
+     * @param log the log
+     */
+    public void setLog(ResultsLog log){
+        resumed = played.sum();
+        this.log = log;
+    }
+
+    /**
+     * Creates a recorder for one thread.
+     * @return the recorder
+     */
+    public Recorder recorder(){
+        Recorder recorder = new Recorder();
+        synchronized(recorders){
+            recorders.add(recorder);
+        }
+        return recorder;
+    }
+
+    /**
+     * @return number of games recorded
+     */
+    public long played(){
+        return played.sum();
+    }
+
+    /**
+     * @return number of games won
+     */
+    public long wins(){
+        return wins.sum();
+    }
+
+    /**
+     * @return number of games in which the first probe was not a mine
+     */
+    public long probed(){
+        return probed.sum();
+    }
+
+    /**
+     * @return the 95% Wilson interval of the win rate, timed out games count as not won
+     */
+    public double[] winInterval(){
+        return Confidence.wilson(wins.sum(), played.sum());
+    }
+
+    /**
+     * @param precision half width of the interval, 0 for never
+     * @return true if enough games were played and the winInterval is within
+     * precision of its center
+     */
+    public boolean precise(double precision){
+        return precision > 0 && played.sum() >= Confidence.MIN_GAMES
+            && Confidence.halfWidth(winInterval()) <= precision;
+    }
+
+    /**
+     * @return number of games that timed out
+     */
+    public long timeouts(){
+        return timeouts.sum();
+    }
+
+    /**
+     * Stops the timer and prints the final summary, and the seeds of the
+     * games that timed out.
+     */
+    @Override
+    public void close(){
+        if(timer != null){
+            timer.shutdownNow();
+        }
+        report();
+        if(!timedOutSeeds.isEmpty()){
+            StringBuilder line = new StringBuilder("Timed out seeds:");
+            for(long seed:new TreeSet<>(timedOutSeeds)){
+                line.append(' ').append(seed);
+            }
+            write(line.toString());
+        }
+    }
+
+    /**
+     * @return sink that prints messages of the run, such as errors of the
+     * games, as lines between the summaries
+     */
+    public LogSink messages(){
+        return messages;
+    }
+
+    /**
+     * Prints a summary of the games recorded so far.
+     */
+    public synchronized void report(){
+        long n = played.sum();
+        long w = wins.sum();
+        long p = probed.sum();
+        StringBuilder line = new StringBuilder();
+        line.append(w).append(" wins in ").append(n).append(" tries -- ")
+            .append(percent(w, n)).append('%');
+        if(p > 0){
+            line.append(", with ").append(p).append(" standard tries -- ")
+                .append(percent(w, p)).append('%');
+        }
+        long t = timeouts.sum();
+        if(t > 0){
+            line.append(", ").append(t).append(" timed out");
+        }
+        double seconds = (System.nanoTime() - start)/1e9;
+        line.append(". (")
+            .append(String.format(Locale.ROOT, "%.1f", (n - resumed)/Math.max(seconds, 1e-9)))
+            .append(" games/s)");
+        write(line.toString());
+    }
+
+    // Writes a line and flushes it, one line at a time from any thread
+    private synchronized void write(String line){
+        try{
+            out.write(line);
+            out.write(System.lineSeparator());
+            out.flush();
+        }catch(IOException e){
+            // Nowhere left to report to
+        }
+    }
+
+    /**
+     * Writes the counts and the histograms of all recorders, as JSON if the
+     * file name ends with .json and as name,value lines of CSV otherwise.
+     * Only call once the threads of the recorders are done.
+     * @param file the file
+     * @throws IOException if the file can not be written
+     */
+    public void export(File file) throws IOException{
+        String[] names = {"gameNanos", "moveNanos", "moveNodes"};
+        LatencyHistogram[] histograms = new LatencyHistogram[names.length];
+        for(int h = 0; h < names.length; h++){
+            histograms[h] = new LatencyHistogram();
+        }
+        synchronized(recorders){
+            for(Recorder recorder:recorders){
+                histograms[0].add(recorder.gameNanos);
+                histograms[1].add(recorder.moveNanos);
+                histograms[2].add(recorder.moveNodes);
+            }
+        }
+        long n = played.sum();
+        long w = wins.sum();
+        long t = timeouts.sum();
+        StringBuilder seeds = new StringBuilder();
+        for(long seed:new TreeSet<>(timedOutSeeds)){
+            seeds.append(seeds.length() == 0 ? "" : json(file) ? ", " : " ").append(seed);
+        }
+        double seconds = (System.nanoTime() - start)/1e9;
+        boolean json = json(file);
+        try(PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))){
+            if(json){
+                pw.printf(Locale.ROOT, "{\"games\": %d, \"wins\": %d, \"losses\": %d,"
+                    + " \"timeouts\": %d, \"standardTries\": %d, \"seconds\": %.3f,%n"
+                    + "  \"timedOutSeeds\": [%s],%n  \"histograms\": {",
+                    n, w, n - w - t, t, probed.sum(), seconds, seeds);
+            }else{
+                pw.println("name,value");
+                pw.println("games," + n);
+                pw.println("wins," + w);
+                pw.println("losses," + (n - w - t));
+                pw.println("timeouts," + t);
+                pw.println("timedOutSeeds," + seeds);
+                pw.println("standardTries," + probed.sum());
+                pw.printf(Locale.ROOT, "seconds,%.3f%n", seconds);
+            }
+            for(int h = 0; h < names.length; h++){
+                export(pw, json, names[h], histograms[h], h == names.length - 1);
+            }
+            if(json){
+                pw.println("}}");
+            }
+            if(pw.checkError()){
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+
+    private static boolean json(File file){
+        return file.getName().endsWith(".json");
+    }
+
+    private static void export(PrintWriter pw, boolean json, String name,
+            LatencyHistogram histogram, boolean last){
+        String[] stats = {"count", "min", "mean", "p50", "p90", "p99", "p999", "max"};
+        double[] values = {histogram.count(), histogram.min(), histogram.mean(),
+            histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+            histogram.percentile(99.9), histogram.max()};
+        if(json){
+            pw.printf("%n    \"%s\": {", name);
+            for(int i = 0; i < stats.length; i++){
+                pw.printf(Locale.ROOT, "\"%s\": %s, ", stats[i], number(values[i]));
+            }
+            pw.print("\"buckets\": [");
+            String separator = "";
+            for(int i = 0; i < histogram.buckets(); i++){
+                if(histogram.bucketCount(i) != 0){
+                    pw.print(separator + "[" + LatencyHistogram.lowerBound(i) + ", "
+                        + LatencyHistogram.upperBound(i) + ", " + histogram.bucketCount(i) + "]");
+                    separator = ", ";
+                }
+            }
+            pw.print("]}" + (last ? "" : ","));
+        }else{
+            for(int i = 0; i < stats.length; i++){
+                pw.println(name + "." + stats[i] + "," + number(values[i]));
+            }
+            // Non empty buckets as name.bucket.lowest.highest,count
+            for(int i = 0; i < histogram.buckets(); i++){
+                if(histogram.bucketCount(i) != 0){
+                    pw.println(name + ".bucket." + LatencyHistogram.lowerBound(i) + "."
+                        + LatencyHistogram.upperBound(i) + "," + histogram.bucketCount(i));
+                }
+            }
+        }
+    }
+
+    private static String number(double value){
+        return value == Math.rint(value) ? Long.toString((long)value)
+            : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static long percent(long n, long d){
+        return d == 0 ? 0 : (200*n + d)/(2*d);
+    }
+
+    /**
+     * Histograms of the games played on one thread. It listens to the moves
+     * of an OurStrategy, and the games are recorded with their time, and
+     * appended to the results log if there is one.
+     */
+    public final class Recorder implements SolverListener {
+
+        private final LatencyHistogram gameNanos = new LatencyHistogram();
+        private final LatencyHistogram moveNanos = new LatencyHistogram();
+        private final LatencyHistogram moveNodes = new LatencyHistogram();
+        private long moves;
+
+        /**
+         * Attaches the recorder to a strategy that reports its moves, if the
+         * reporter keeps move histograms.
+         * @param s the strategy
+         */
+        public void listenTo(Strategy s){
+            if(moveHistograms && s instanceof OurStrategy){
+                ((OurStrategy)s).listener = this;
+            }
+        }
+
+        /**
+         * @param seed seed of a board
+         * @return true if the game is in the results log already
+         */
+        public boolean done(long seed){
+            ResultsLog l = log;
+            return l != null && l.done(seed);
+        }
+
+        /**
+         * Records a game. One that timed out is counted apart with its seed
+         * and left out of the histograms.
+         * @param seed seed of the board
+         * @param outcome BatchRunner.WON, LOST or TIMED_OUT
+         * @param probed true if the first probe was not a mine
+         * @param moves number of probes and marks
+         * @param nanos time the game took
+         * @throws UncheckedIOException if the results log can not be written
+         */
+        public void record(long seed, int outcome, boolean probed, int moves, long nanos){
+            if(outcome == BatchRunner.TIMED_OUT){
+                timeout(seed);
+            }else{
+                gameNanos.record(nanos);
+                this.moves += moves;
+                ProgressReporter.this.record(outcome == BatchRunner.WON, probed);
+            }
+            ResultsLog l = log;
+            if(l != null){
+                try{
+                    l.append(seed, outcome, probed, moves, nanos);
+                }catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * @return histogram of the time of the games that were not timed out
+         */
+        public LatencyHistogram gameNanos(){
+            return gameNanos;
+        }
+
+        /**
+         * @return number of probes and marks of the games that were not timed out
+         */
+        public long moves(){
+            return moves;
+        }
+
+        @Override
+        public void move(Move move){
+            moveNanos.record(move.nanos);
+            moveNodes.record(move.nodesVisited);
+        }
+
+        @Override
+        public void game(Game game){
+        }
+    }
+}
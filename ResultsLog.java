@@ -0,0 +1,243 @@
+import java.io.*;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * Append-only binary log of the games of a batch run. The header holds
+ * what the run plays, every game then adds a fixed size record of its seed,
+ * outcome, number of moves and time. Records are buffered and the file is
+ * synced to disk every SYNC_MILLIS, so a crash loses at most the games of
+ * the last interval. Opening an existing log resumes it: its records are
+ * counted again, a record cut short by the crash is dropped, and the games
+ * already in it are skipped by the run.
+ * <p>
+ * Usage: java ResultsLog file... prints the totals of existing logs.
+ * @author joar
+ */
+public final class ResultsLog implements Closeable {
+
+    /**
+     * Time between syncs of the file to disk
+     */
+    public static final long SYNC_MILLIS = 1000;
+
+    private static final int MAGIC = 0x50474d53; // "PGMS"
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 8 + 1 + 4 + 8; // seed, flags, moves, nanos
+    private static final int PROBED = 4; // Flag of a game with a successful first probe, above the outcome
+
+    private final String strategy;
+    private final int mines;
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final BitSet done = new BitSet(); // Games in the log by seed - the seed of the run
+    private long restored;
+
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private long lastSync = System.nanoTime();
+
+    private ResultsLog(String strategy, int mines, int rows, int columns, long seed){
+        this.strategy = strategy;
+        this.mines = mines;
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+    }
+
+    /**
+     * Opens a log for appending, creating it if it does not exist. An
+     * existing log must have been written for the same strategy and board,
+     * its seed replaces the one given and its games go to the recorder.
+     * @param name file name
+     * @param strategy the strategy
+     * @param mines number of mines
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param seed seed of the run, ignored if the log exists
+     * @param recorder where the games already in the log are recorded
+     * @return the log
+     * @throws IOException if the file can not be read or written, or is for another run
+     */
+    public static ResultsLog open(String name, String strategy, int mines, int rows, int columns,
+            long seed, ProgressReporter.Recorder recorder) throws IOException{
+        File f = new File(name);
+        ResultsLog log;
+        if(f.exists() && f.length() > 0){
+            // Nothing is cut off or recorded before the log is known to be of this run
+            try(DataInputStream in = new DataInputStream(new FileInputStream(f))){
+                log = header(in, f);
+            }
+            if(!log.strategy.equals(strategy) || log.mines != mines || log.rows != rows
+                    || log.columns != columns){
+                throw new IOException(name + " is a log of " + log.describe());
+            }
+            log = read(f, recorder, true);
+        }else{
+            log = new ResultsLog(strategy, mines, rows, columns, seed);
+            try(DataOutputStream header = new DataOutputStream(new FileOutputStream(f))){
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeUTF(strategy);
+                header.writeInt(mines);
+                header.writeInt(rows);
+                header.writeInt(columns);
+                header.writeLong(seed);
+            }
+        }
+        log.file = new FileOutputStream(f, true);
+        log.out = new DataOutputStream(new BufferedOutputStream(log.file, 1 << 16));
+        return log;
+    }
+
+    /**
+     * Reads a log and records its games. A record cut short at the end is
+     * ignored, or cut off the file when repairing.
+     * @param f the file
+     * @param recorder where the games go, null to only read the header and count them
+     * @param repair cut off a record cut short, only for a log no run is writing
+     * @return the log, not open for appending
+     * @throws IOException if the file can not be read or is not a log
+     */
+    public static ResultsLog read(File f, ProgressReporter.Recorder recorder, boolean repair)
+            throws IOException{
+        ResultsLog log;
+        long end;
+        try(RandomAccessFile raf = new RandomAccessFile(f, repair ? "rw" : "r")){
+            log = header(raf, f);
+            long start = raf.getFilePointer();
+            end = start + (raf.length() - start)/RECORD_BYTES*RECORD_BYTES;
+            if(repair && raf.length() != end){
+                raf.setLength(end); // Cut short by a crash
+            }
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(f), 1 << 16))){
+                in.readFully(new byte[(int)start]); // The header, read above
+                for(long pos = start; pos < end; pos += RECORD_BYTES){
+                    long gameSeed = in.readLong();
+                    int flags = in.readByte();
+                    int moves = in.readInt();
+                    long nanos = in.readLong();
+                    long n = gameSeed - log.seed;
+                    if(n >= 0 && n < Integer.MAX_VALUE){
+                        log.done.set((int)n);
+                    }
+                    if(recorder != null){
+                        recorder.record(gameSeed, flags & 3, (flags & PROBED) != 0, moves, nanos);
+                    }
+                    log.restored++;
+                }
+            }
+        }
+        return log;
+    }
+
+    // The log as described by its header, without its games
+    private static ResultsLog header(DataInput in, File f) throws IOException{
+        if(in.readInt() != MAGIC || in.readInt() != VERSION){
+            throw new IOException(f + " is not a results log");
+        }
+        return new ResultsLog(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+    }
+
+    /**
+     * @return seed of the run, game n is played on the board of seed + n
+     */
+    public long seed(){
+        return seed;
+    }
+
+    /**
+     * @return number of games that were in the log when it was opened
+     */
+    public long restored(){
+        return restored;
+    }
+
+    /**
+     * @param gameSeed seed of a board
+     * @return true if the game was in the log when it was opened
+     */
+    public boolean done(long gameSeed){
+        long n = gameSeed - seed;
+        return n >= 0 && n < Integer.MAX_VALUE && done.get((int)n);
+    }
+
+    /**
+     * Appends a game, from any thread, and syncs the file if it is time.
+     * @param gameSeed seed of the board
+     * @param outcome BatchRunner.WON, LOST or TIMED_OUT
+     * @param probed true if the first probe was not a mine
+     * @param moves number of probes and marks
+     * @param nanos time the game took
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void append(long gameSeed, int outcome, boolean probed, int moves, long nanos)
+            throws IOException{
+        out.writeLong(gameSeed);
+        out.writeByte(outcome | (probed ? PROBED : 0));
+        out.writeInt(moves);
+        out.writeLong(nanos);
+        if(System.nanoTime() - lastSync > SYNC_MILLIS*1000000){
+            sync();
+        }
+    }
+
+    /**
+     * Writes out the buffered games and syncs the file to disk.
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void sync() throws IOException{
+        out.flush();
+        file.getFD().sync();
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Syncs and closes the file.
+     * @throws IOException if the file can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        if(out != null){
+            sync();
+            out.close();
+            out = null;
+        }
+    }
+
+    private String describe(){
+        return strategy + " with " + mines + " mines on " + rows + "x" + columns + ", seed " + seed;
+    }
+
+    /**
+     * Prints the totals of existing logs without replaying any game.
+     * @param args the log files
+     * @throws IOException if a log can not be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length == 0){
+            System.out.println("Usage: java ResultsLog file...");
+            return;
+        }
+        for(String name:args){
+            ProgressReporter reporter = new ProgressReporter(new ByteArrayOutputStream(), 0);
+            ProgressReporter.Recorder recorder = reporter.recorder();
+            ResultsLog log = read(new File(name), recorder, false);
+            long n = reporter.played();
+            long w = reporter.wins();
+            double[] interval = reporter.winInterval();
+            LatencyHistogram games = recorder.gameNanos();
+            System.out.println(name + ": " + log.describe());
+            System.out.printf(Locale.ROOT, "%d wins in %d tries -- %.1f%% (95%% %.1f%% - %.1f%%),"
+                + " with %d standard tries, %d timed out%n",
+                w, n, n == 0 ? 0 : 100.0*w/n, 100*interval[0], 100*interval[1],
+                reporter.probed(), reporter.timeouts());
+            System.out.printf(Locale.ROOT, "%.1f moves per game, game time mean %.2f p50 %.2f"
+                + " p99 %.2f max %.2f ms%n", recorder.moves()/Math.max(1.0, n - reporter.timeouts()),
+                games.mean()/1e6, games.percentile(50)/1e6, games.percentile(99)/1e6,
+                games.max()/1e6);
+        }
+    }
+}
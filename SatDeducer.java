@@ -0,0 +1,79 @@
+/**
+ * Finds forced cells of a fringe with the CdclSolver. Every constraint is
+ * encoded as a cardinality constraint over its cells, and a cell is forced
+ * when assuming its other value makes the clauses unsatisfiable. Models
+ * found along the way rule out the cells seen with both values, and every
+ * forced cell is added as a unit clause, so later calls build on what the
+ * earlier ones learned. At the deadline the cells forced so far are
+ * returned, each of them is sure.
+ * @author joar
+ */
+public final class SatDeducer {
+
+    private SatDeducer(){ }
+
+    /**
+     * Deduces all forced cells.
+     * @param nVars number of variables
+     * @param constraints variable indices of each constraint
+     * @param sums sum of each constraint
+     * @param maxMines max number of mines among the variables
+     * @param deadline value of System.nanoTime at which to give up, 0 for never
+     * @param token checked by the solver at every conflict, null for never
+     * @return for each variable 0 if safe, 1 if mine or LinearDeducer.UNKNOWN
+     * @throws GameCancelledException if the token is cancelled
+     */
+    public static int[] deduce(int nVars, int[][] constraints, int[] sums, int maxMines,
+            long deadline, CancellationToken token){
+        int[] forced = new int[nVars];
+        java.util.Arrays.fill(forced, LinearDeducer.UNKNOWN);
+        CdclSolver solver = new CdclSolver();
+        solver.setToken(token);
+        solver.setDeadline(deadline);
+        int[] all = new int[nVars];
+        for(int v = 0; v < nVars; v++){
+            all[v] = solver.newVar();
+        }
+        for(int c = 0; c < constraints.length; c++){
+            int[] literals = new int[constraints[c].length];
+            for(int i = 0; i < literals.length; i++){
+                literals[i] = constraints[c][i] + 1;
+            }
+            solver.addExactly(literals, sums[c]);
+        }
+        solver.addAtMost(all, maxMines);
+
+        if(!solver.solve()){
+            return forced; // Inconsistent, nothing is sure
+        }
+        boolean[] canBeSafe = new boolean[nVars];
+        boolean[] canBeMine = new boolean[nVars];
+        record(solver, canBeSafe, canBeMine);
+        for(int v = 0; v < nVars; v++){
+            if(canBeSafe[v] && canBeMine[v]){
+                continue;
+            }
+            // Try the value the cell has not been seen with
+            int other = canBeMine[v] ? -(v + 1) : v + 1;
+            if(solver.solve(other)){
+                record(solver, canBeSafe, canBeMine);
+            }else if(solver.timedOut()){
+                return forced;
+            }else{
+                forced[v] = canBeMine[v] ? 1 : 0;
+                solver.addClause(-other);
+            }
+        }
+        return forced;
+    }
+
+    private static void record(CdclSolver solver, boolean[] canBeSafe, boolean[] canBeMine){
+        for(int v = 0; v < canBeSafe.length; v++){
+            if(solver.modelValue(v + 1)){
+                canBeMine[v] = true;
+            }else{
+                canBeSafe[v] = true;
+            }
+        }
+    }
+}
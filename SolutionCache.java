@@ -0,0 +1,208 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread safe LRU cache of solved constraint components.
+ * A component is keyed by a canonical signature of its constraints, so the
+ * same shape (a 1-2-1 wall, a corner 1, ...) is solved only once no matter
+ * where on the board, in which orientation or in which game it shows up.
+ * Solutions are stored as bit masks over the canonical variable order.
+ * The cache is bounded by the bytes its entries hold rather than by their
+ * number, since one large component can store more solutions than
+ * thousands of small ones.
+ * @author joar
+ */
+public final class SolutionCache {
+
+    /**
+     * Largest component, in variables, that fits in a solution mask
+     */
+    public static final int MAX_VARS = 64;
+
+    // The eight rotations and reflections of the board, as (x,y) -> (a*x+b*y, c*x+d*y)
+    private static final int[][] TRANSFORMS = {
+        {1, 0, 0, 1}, {-1, 0, 0, 1}, {1, 0, 0, -1}, {-1, 0, 0, -1},
+        {0, 1, 1, 0}, {0, -1, 1, 0}, {0, 1, -1, 0}, {0, -1, -1, 0}
+    };
+
+    // Rough bytes of an entry besides its key chars and solution masks
+    private static final int ENTRY_BYTES = 96;
+
+    private final long capacity;
+    private long bytes; // Held by the entries now
+    private final LinkedHashMap<String, long[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     * @param capacity max bytes held before the least recently used components are
+     * evicted
+     */
+    public SolutionCache(long capacity){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Looks up the solutions of a component.
+     * @param key canonical signature
+     * @return solution masks over the canonical variable order, or null if not cached
+     */
+    public long[] get(String key){
+        long[] solutions;
+        synchronized(this){
+            solutions = entries.get(key);
+        }
+        if(solutions == null){
+            misses.incrementAndGet();
+        }else{
+            hits.incrementAndGet();
+        }
+        return solutions;
+    }
+
+    /**
+     * Stores the solutions of a component, unless they alone would fill the cache.
+     * @param key canonical signature
+     * @param solutions solution masks over the canonical variable order, not copied
+     */
+    public synchronized void put(String key, long[] solutions){
+        long size = bytes(key, solutions);
+        if(size > capacity){
+            return;
+        }
+        long[] old = entries.put(key, solutions);
+        if(old != null){
+            bytes -= bytes(key, old);
+        }
+        bytes += size;
+        Iterator<java.util.Map.Entry<String, long[]>> eldest = entries.entrySet().iterator();
+        while(bytes > capacity){
+            java.util.Map.Entry<String, long[]> e = eldest.next();
+            bytes -= bytes(e.getKey(), e.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return number of cached components
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return rough number of bytes held by the cached components
+     */
+    public synchronized long bytes(){
+        return bytes;
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public synchronized void clear(){
+        entries.clear();
+        bytes = 0;
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * @return number of lookups that found an entry
+     */
+    public long hits(){
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups that found nothing
+     */
+    public long misses(){
+        return misses.get();
+    }
+
+    /**
+     * @return hits / lookups, 0 before the first lookup
+     */
+    public double hitRate(){
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double)h/total;
+    }
+
+    private static long bytes(String key, long[] solutions){
+        return ENTRY_BYTES + 2L*key.length() + 8L*solutions.length;
+    }
+
+    /**
+     * Computes the canonical signature of a component. The variables are ordered
+     * by position under each of the eight board symmetries, the constraints are
+     * written in that order and the smallest encoding wins. Two components with
+     * the same signature have the same solutions in canonical order.
+     * @param varX x position of each variable
+     * @param varY y position of each variable
+     * @param constraints variable indices of each constraint
+     * @param sums sum of each constraint
+     * @param order filled with the variable index at each canonical position
+     * @return the signature
+     */
+    public static String signature(int[] varX, int[] varY, int[][] constraints,
+            int[] sums, int[] order){
+        int nVars = varX.length;
+        String best = null;
+        Integer[] candidate = new Integer[nVars];
+        int[] position = new int[nVars];
+        String[] encoded = new String[constraints.length];
+        StringBuilder sb = new StringBuilder();
+        for(int[] t:TRANSFORMS){
+            for(int v = 0; v < nVars; v++){
+                candidate[v] = v;
+            }
+            final int[] tx = new int[nVars];
+            final int[] ty = new int[nVars];
+            for(int v = 0; v < nVars; v++){
+                tx[v] = t[0]*varX[v] + t[1]*varY[v];
+                ty[v] = t[2]*varX[v] + t[3]*varY[v];
+            }
+            Arrays.sort(candidate, new Comparator<Integer>(){
+                @Override
+                public int compare(Integer a, Integer b){
+                    return ty[a] != ty[b] ? Integer.compare(ty[a], ty[b])
+                        : Integer.compare(tx[a], tx[b]);
+                }
+            });
+            for(int p = 0; p < nVars; p++){
+                position[candidate[p]] = p;
+            }
+            for(int c = 0; c < constraints.length; c++){
+                int[] vars = constraints[c];
+                char[] chars = new char[vars.length + 2];
+                chars[0] = (char)sums[c];
+                chars[1] = (char)vars.length;
+                for(int i = 0; i < vars.length; i++){
+                    chars[i + 2] = (char)position[vars[i]];
+                }
+                Arrays.sort(chars, 2, chars.length);
+                encoded[c] = new String(chars);
+            }
+            Arrays.sort(encoded);
+            sb.setLength(0);
+            sb.append((char)nVars);
+            for(String e:encoded){
+                sb.append(e);
+            }
+            String key = sb.toString();
+            if(best == null || key.compareTo(best) < 0){
+                best = key;
+                for(int p = 0; p < nVars; p++){
+                    order[p] = candidate[p];
+                }
+            }
+        }
+        return best;
+    }
+}
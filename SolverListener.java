@@ -0,0 +1,114 @@
+/**
+ * Receives the counters of every analysis of the board that OurStrategy
+ * makes, and of every game it finishes. The counter objects are reused by
+ * the next move, so a listener must copy what it keeps. Without a listener,
+ * and unless the property minesweep.jfr is true, nothing is timed or reported.
+ * @see JfrSolverListener
+ * @author joar
+ */
+public interface SolverListener {
+
+    /**
+     * Called after every analysis of the board, from the thread playing the game.
+     * @param move counters of the analysis, only valid during the call
+     */
+    void move(Move move);
+
+    /**
+     * Called when a game played with Strategy.play is done. Not called for
+     * step sessions, which never learn how the game ended.
+     * @param game totals of the game, only valid during the call
+     */
+    void game(Game game);
+
+    /**
+     * Counters of one analysis of the board, which may make many moves.
+     */
+    final class Move {
+
+        public static final int LOCAL = 0; // Single cell rules and the pattern table
+        public static final int LINEAR = 1; // The LinearDeducer
+        public static final int SAT = 2; // The SatDeducer
+        public static final int SEARCH = 3; // Solving the fringe components
+        public static final int GUESS = 4; // Guess on the fringe
+        public static final int RANDOM = 5; // Guess off the fringe, or with nothing to go on
+
+        /**
+         * Names of the stages, by stage
+         */
+        public static final String[] STAGES = {"local", "linear", "sat", "search", "guess", "random"};
+
+        public long nanos; // Time of the whole analysis, moves included
+        public long scanNanos; // Time of the board scan that finds the fringe and constraints
+        public int fringe; // Unprobed cells next to a number
+        public int constraints; // Constraints left after the reduction
+        public int components; // Independent parts of the fringe that were solved
+        public long nodesVisited; // CSP nodes of all searches
+        public double solutions; // Solutions counted, or sampled, over all components
+        public int deductions; // Cells probed or marked because they were sure
+        public int unscored; // Guess candidates the lookahead could not score in time
+        public int stage; // Stage that found the moves, one of the constants above
+
+        /**
+         * @return true if the analysis ended in a guess
+         */
+        public boolean guess(){
+            return stage >= GUESS;
+        }
+
+        void reset(){
+            nanos = 0;
+            scanNanos = 0;
+            fringe = 0;
+            constraints = 0;
+            components = 0;
+            nodesVisited = 0;
+            solutions = 0;
+            deductions = 0;
+            unscored = 0;
+            stage = LOCAL;
+        }
+    }
+
+    /**
+     * Totals of one game.
+     */
+    final class Game {
+
+        public int rows;
+        public int columns;
+        public int mines;
+        public boolean won;
+        public int moves; // Analyses of the board
+        public int deductions; // Cells probed or marked because they were sure
+        public int guesses;
+        public int unscored; // Guess candidates the lookahead could not score in time
+        public long nodesVisited; // CSP nodes of all searches
+        public long scanNanos; // Time of all board scans
+        public long nanos; // Time of all analyses
+
+        void reset(int rows, int columns){
+            this.rows = rows;
+            this.columns = columns;
+            mines = 0;
+            won = false;
+            moves = 0;
+            deductions = 0;
+            guesses = 0;
+            unscored = 0;
+            nodesVisited = 0;
+            scanNanos = 0;
+            nanos = 0;
+        }
+
+        void add(Move move){
+            moves++;
+            deductions += move.deductions;
+            guesses += move.guess() ? 1 : 0;
+            unscored += move.unscored;
+            nodesVisited += move.nodesVisited;
+            scanNanos += move.scanNanos;
+            nanos += move.nanos;
+        }
+    }
+}
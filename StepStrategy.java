@@ -0,0 +1,46 @@
+/**
+ * Strategy that plays a game one batch of moves at a time instead of in one
+ * blocking call. The strategy never touches the Map: the caller applies the
+ * moves of a batch and hands back what the board shows afterwards. A session
+ * keeps no thread to itself, so a few threads can interleave any number of
+ * games, and a game can be paused or moved to another thread between steps.
+ * @see Strategy
+ * @author joar
+ */
+public interface StepStrategy {
+
+    /**
+     * Added to id << 1 in a move that marks the cell, probes have it clear
+     */
+    int MARK = 1;
+
+    /**
+     * Starts a game.
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param mines number of mines
+     * @param board what look returns for each cell id, y*columns + x, not kept
+     * @return the session of the game
+     */
+    Session start(int rows, int columns, int mines, int[] board);
+
+    /**
+     * One game in progress.
+     */
+    interface Session {
+
+        /**
+         * Reports the results of the previous batch and asks for the next one.
+         * Must not be called once the game is done.
+         * @param cells ids of the cells that changed since the previous batch
+         * @param values what look now returns for each of them
+         * @return the moves to make, in order, as id << 1 or id << 1 | MARK
+         */
+        int[] step(int[] cells, int[] values);
+
+        /**
+         * Ends the session and releases what it holds.
+         */
+        void close();
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays several strategies on the same boards. Every board, seed + n for
+ * game n, is played by every entrant, so the difference in win rate between
+ * two entrants is measured on paired games: boards that both win or both
+ * lose cancel out, and only the boards won by just one of them count. That
+ * takes far fewer games to tell two strategies apart than separate runs.
+ * Workers take whole boards from a shared counter and play them with their
+ * own instance of each entrant, starting with a different entrant on each
+ * board so no entrant always finds the caches warm. Given a precision the
+ * tournament stops before its last game once every paired interval is that
+ * narrow.
+ * @author joar
+ */
+public final class Tournament {
+
+    private final String[] entrants;
+    private final int mines;
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final long budgetMillis;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final LongAdder played = new LongAdder(); // Boards played by every entrant
+    private final LongAdder[] wins;
+    private final LongAdder[] timeouts;
+    private final LongAdder[] nanos;
+    private final LongAdder[][] onlyWon; // [i][j] boards entrant i won and j did not
+
+    /**
+     * Creates a tournament.
+     * @param entrants the strategies as for GameOptions.newStrategy
+     * @param mines number of mines
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param seed game n is played on the board of seed + n
+     * @param budgetMillis time per game before it is cancelled, 0 for no limit
+     */
+    public Tournament(String[] entrants, int mines, int rows, int columns,
+            long seed, long budgetMillis){
+        this.entrants = entrants.clone();
+        this.mines = mines;
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.budgetMillis = budgetMillis;
+        int e = entrants.length;
+        wins = adders(e);
+        timeouts = adders(e);
+        nanos = adders(e);
+        onlyWon = new LongAdder[e][];
+        for(int i = 0; i < e; i++){
+            onlyWon[i] = adders(e);
+        }
+    }
+
+    /**
+     * Plays a tournament given by the options and prints the results.
+     * @param o options, with more than one strategy
+     */
+    public static void run(GameOptions o){
+        String[] entrants = o.strategies.toArray(new String[0]);
+        if(o.log != null){
+            System.out.println("Tournaments keep no results log, ignoring " + o.log);
+        }
+        System.out.println("Playing " + o.tries + " " + o.gameName + " games with each of "
+            + entrants.length + " strategies on " + Math.max(1, o.threads) + " threads, seed " + o.seed);
+        Tournament t = new Tournament(entrants, o.mines, o.rows, o.columns, o.seed, o.timeout);
+        try{
+            t.run(o.tries, Math.max(1, o.threads), 1000L*o.report, o.precision);
+        }catch(ReflectiveOperationException | IllegalArgumentException e){
+            System.out.println("Cannot create strategy: " + e);
+            GameOptions.usage();
+            return;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt(); // Report what was played
+        }
+        if(o.precision > 0 && t.played() < o.tries){
+            System.out.printf(Locale.ROOT, "Stopped after %d games, all paired intervals within +- %.2f%%%n",
+                t.played(), 100*o.precision);
+        }
+        t.report(System.out);
+    }
+
+    /**
+     * Plays the games and waits for all of them to finish.
+     * @param games number of boards
+     * @param threads number of workers
+     * @param reportMillis time between progress lines, 0 for none
+     * @param precision stop once precise, 0 to play all games
+     * @throws ReflectiveOperationException if a strategy can not be created
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run(int games, int threads, long reportMillis, double precision)
+            throws ReflectiveOperationException, InterruptedException{
+        for(String entrant:entrants){
+            GameOptions.newStrategy(entrant); // Fail here rather than in every worker
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++){
+            workers.add(pool.submit(new Worker(games, precision)));
+        }
+        pool.shutdown();
+        try{
+            while(!pool.awaitTermination(reportMillis > 0 ? reportMillis : Long.MAX_VALUE,
+                    TimeUnit.MILLISECONDS)){
+                progress(System.out);
+            }
+            for(Future<?> worker:workers){
+                worker.get();
+            }
+        }catch(ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of boards played by every entrant
+     */
+    public long played(){
+        return played.sum();
+    }
+
+    /**
+     * @param precision half width of the intervals, 0 for never
+     * @return true if enough boards were played and every paired interval
+     * is within precision of its center
+     */
+    public boolean precise(double precision){
+        if(precision <= 0 || played.sum() < Confidence.MIN_GAMES){
+            return false;
+        }
+        for(int i = 0; i < entrants.length; i++){
+            for(int j = i + 1; j < entrants.length; j++){
+                if(Confidence.halfWidth(pairedInterval(i, j)) > precision){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints the games played so far and the win rate of each entrant.
+     * @param out where to print
+     */
+    public void progress(PrintStream out){
+        long n = played.sum();
+        StringBuilder line = new StringBuilder().append(n).append(" games:");
+        for(int i = 0; i < entrants.length; i++){
+            line.append(' ').append(String.format(Locale.ROOT, "%.1f%%", percent(wins[i].sum(), n)));
+        }
+        out.println(line);
+    }
+
+    /**
+     * Prints the win rate and time of each entrant, and the paired difference
+     * in win rate of every pair with its 95% interval. For comparison the
+     * interval the same games would give unpaired is shown next to it.
+     * @param out where to print
+     */
+    public void report(PrintStream out){
+        long n = played.sum();
+        if(n == 0){
+            out.println("No games played");
+            return;
+        }
+        int width = 8;
+        for(String entrant:entrants){
+            width = Math.max(width, entrant.length());
+        }
+        double baseMillis = nanos[0].sum()/1e6/n;
+        out.printf(Locale.ROOT, "%-" + width + "s %7s %7s %8s %9s %6s%n",
+            "Strategy", "Wins", "Win%", "Timeouts", "ms/game", "Time");
+        for(int i = 0; i < entrants.length; i++){
+            double millis = nanos[i].sum()/1e6/n;
+            out.printf(Locale.ROOT, "%-" + width + "s %7d %6.1f%% %8d %9.2f %5.2fx%n",
+                entrants[i], wins[i].sum(), percent(wins[i].sum(), n), timeouts[i].sum(),
+                millis, baseMillis == 0 ? 0 : millis/baseMillis);
+        }
+        out.println("Paired differences in win rate over " + n + " boards, 95% intervals:");
+        for(int i = 0; i < entrants.length; i++){
+            for(int j = i + 1; j < entrants.length; j++){
+                double[] interval = pairedInterval(i, j);
+                double pi = (double)wins[i].sum()/n;
+                double pj = (double)wins[j].sum()/n;
+                double unpaired = Confidence.Z95*Math.sqrt((pi*(1 - pi) + pj*(1 - pj))/n);
+                String verdict = interval[0] > 0 ? entrants[i] + " better"
+                    : interval[1] < 0 ? entrants[j] + " better" : "no difference shown";
+                out.printf(Locale.ROOT, "%s - %s: %+.2f%% +- %.2f%% (unpaired +- %.2f%%),"
+                    + " %d vs %d boards won by only one -- %s%n",
+                    entrants[i], entrants[j], 50*(interval[0] + interval[1]),
+                    50*(interval[1] - interval[0]), 100*unpaired,
+                    onlyWon[i][j].sum(), onlyWon[j][i].sum(), verdict);
+            }
+        }
+    }
+
+    /**
+     * Interval of the difference in win rate of two entrants on the boards
+     * played, from the boards won by only one of them, see
+     * Confidence.pairedDifference.
+     * @param i first entrant
+     * @param j second entrant
+     * @return the 95% interval of the win rate of i minus that of j, low then high
+     */
+    public double[] pairedInterval(int i, int j){
+        return Confidence.pairedDifference(onlyWon[i][j].sum(), onlyWon[j][i].sum(), played.sum());
+    }
+
+    private static LongAdder[] adders(int n){
+        LongAdder[] adders = new LongAdder[n];
+        for(int i = 0; i < n; i++){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static double percent(long k, long n){
+        return n == 0 ? 0 : 100.0*k/n;
+    }
+
+    private final class Worker implements Callable<Void> {
+
+        private final int games;
+        private final double precision;
+
+        Worker(int games, double precision){
+            this.games = games;
+            this.precision = precision;
+        }
+
+        @Override
+        public Void call() throws ReflectiveOperationException{
+            int e = entrants.length;
+            Strategy[] strategies = new Strategy[e];
+            for(int i = 0; i < e; i++){
+                strategies[i] = GameOptions.newStrategy(entrants[i]);
+            }
+            boolean[] won = new boolean[e];
+            int n;
+            while(!precise(precision) && (n = nextGame.getAndIncrement()) < games){
+                for(int k = 0; k < e; k++){
+                    int i = (n + k) % e;
+                    Map m = new MineMap(mines, rows, columns, seed + n);
+                    long before = System.nanoTime();
+                    int outcome = BatchRunner.play(strategies[i], m, budgetMillis, LogSink.CONSOLE);
+                    nanos[i].add(System.nanoTime() - before);
+                    won[i] = outcome == BatchRunner.WON;
+                    if(won[i]){
+                        wins[i].increment();
+                    }else if(outcome == BatchRunner.TIMED_OUT){
+                        timeouts[i].increment();
+                    }
+                }
+                for(int i = 0; i < e; i++){
+                    for(int j = 0; j < e; j++){
+                        if(won[i] && !won[j]){
+                            onlyWon[i][j].increment();
+                        }
+                    }
+                }
+                played.increment();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result comes with its
+ * allocation rate. Takes the usual JMH command line, for example
+ * <code>java -jar target/benchmarks.jar SolverBenchmark -p position=expert</code>.
+ * @author joar
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain(){ }
+
+    public static void main(String[] args) throws Exception{
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+            .parent(options)
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Board operations: building a seeded MineMap and reading it back.
+ * @author joar
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"beginner", "intermediate", "expert"})
+    public String level;
+
+    private int mines;
+    private int rows;
+    private int columns;
+    private long seed;
+    private Object map; // Fixed board with its first safe cell probed
+
+    @Setup
+    public void setup() throws Throwable{
+        if(level.equals("beginner")){
+            mines = 10;
+            rows = 8;
+            columns = 8;
+        }else if(level.equals("intermediate")){
+            mines = 40;
+            rows = 13;
+            columns = 15;
+        }else{
+            mines = 99;
+            rows = 16;
+            columns = 30;
+        }
+        map = Engine.newMineMap(mines, rows, columns, 42);
+        for(int id = 0; id < rows*columns; id++){
+            if(Engine.probe(map, id % columns, id / columns) >= 0){
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public Object newMineMap() throws Throwable{
+        return Engine.newMineMap(mines, rows, columns, seed++);
+    }
+
+    @Benchmark
+    public void lookAll(Blackhole bh) throws Throwable{
+        for(int y = 0; y < rows; y++){
+            for(int x = 0; x < columns; x++){
+                bh.consume(Engine.look(map, x, y));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean done() throws Throwable{
+        return Engine.done(map);
+    }
+
+    @Benchmark
+    public void probeUntilDone(Blackhole bh) throws Throwable{
+        // Probe a fresh board row by row until a mine goes off
+        Object m = Engine.newMineMap(mines, rows, columns, 42);
+        for(int id = 0; id < rows*columns && !Engine.done(m); id++){
+            bh.consume(Engine.probe(m, id % columns, id / columns));
+        }
+    }
+}
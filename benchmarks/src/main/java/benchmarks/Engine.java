@@ -0,0 +1,163 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * Access to the engine, whose classes live in the default package that
+ * Java code in a named package (which JMH requires) can not refer to. The
+ * entry points are looked up once into static final method handles, which
+ * the JIT inlines like direct calls, so the benchmarks measure the engine
+ * and not the reflection.
+ * @author joar
+ */
+final class Engine {
+
+    private static final MethodHandle NEW_MINE_MAP;
+    private static final MethodHandle PROBE;
+    private static final MethodHandle LOOK;
+    private static final MethodHandle DONE;
+    private static final MethodHandle START;
+    private static final MethodHandle STEP;
+    private static final MethodHandle CLOSE;
+    private static final MethodHandle NEW_CONTEXT;
+    private static final MethodHandle CSP_SOLVER;
+    private static final MethodHandle CONSTRAINT_SATISFIED;
+    private static final MethodHandle CLEAR_CACHE;
+    private static final Class<?> STRATEGY;
+    private static final Object QUIET;
+
+    static{
+        try{
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> mineMap = Class.forName("MineMap");
+            Class<?> map = Class.forName("Map");
+            Class<?> stepStrategy = Class.forName("StepStrategy");
+            Class<?> session = Class.forName("StepStrategy$Session");
+            Class<?> context = Class.forName("OurStrategy$GameContext");
+            STRATEGY = Class.forName("OurStrategy");
+            QUIET = Class.forName("LogSink").getField("NONE").get(null);
+
+            NEW_MINE_MAP = lookup.unreflectConstructor(mineMap.getConstructor(
+                int.class, int.class, int.class, long.class))
+                .asType(MethodType.methodType(Object.class, int.class, int.class, int.class, long.class));
+            PROBE = erase(lookup.unreflect(map.getMethod("probe", int.class, int.class)));
+            LOOK = erase(lookup.unreflect(map.getMethod("look", int.class, int.class)));
+            DONE = erase(lookup.unreflect(map.getMethod("done")));
+            START = erase(lookup.unreflect(stepStrategy.getMethod("start",
+                int.class, int.class, int.class, int[].class)));
+            STEP = erase(lookup.unreflect(session.getMethod("step", int[].class, int[].class)));
+            CLOSE = erase(lookup.unreflect(session.getMethod("close")));
+
+            // The CSP lives in the private per game context of OurStrategy
+            Constructor<?> newContext = context.getDeclaredConstructor(STRATEGY);
+            newContext.setAccessible(true);
+            NEW_CONTEXT = erase(lookup.unreflectConstructor(newContext));
+            Method cspSolver = context.getMethod("cspSolver", ArrayList.class, ArrayList.class,
+                ArrayList.class, ArrayList.class, int.class, int.class, int.class);
+            cspSolver.setAccessible(true);
+            CSP_SOLVER = erase(lookup.unreflect(cspSolver));
+            Method constraintSatisfied = context.getMethod("constraintSatisfied",
+                ArrayList.class, ArrayList.class, ArrayList.class, boolean.class);
+            constraintSatisfied.setAccessible(true);
+            CONSTRAINT_SATISFIED = erase(lookup.unreflect(constraintSatisfied));
+            Object componentCache = STRATEGY.getField("componentCache").get(null);
+            CLEAR_CACHE = lookup.unreflect(componentCache.getClass().getMethod("clear"))
+                .bindTo(componentCache);
+        }catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine(){ }
+
+    // Replaces the engine classes in a handle's type by Object
+    private static MethodHandle erase(MethodHandle handle){
+        MethodType type = handle.type();
+        for(int i = 0; i < type.parameterCount(); i++){
+            if(!type.parameterType(i).isPrimitive() && !type.parameterType(i).isArray()
+                    && type.parameterType(i) != ArrayList.class){
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if(!type.returnType().isPrimitive() && !type.returnType().isArray()){
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    /**
+     * @return a new OurStrategy that logs nothing
+     */
+    static Object newStrategy() throws ReflectiveOperationException{
+        Object strategy = STRATEGY.getConstructor().newInstance();
+        set(strategy, "log", QUIET);
+        return strategy;
+    }
+
+    /**
+     * Sets a public configuration field of a strategy.
+     */
+    static void set(Object strategy, String name, Object value) throws ReflectiveOperationException{
+        Field field = STRATEGY.getField(name);
+        field.set(strategy, value);
+    }
+
+    static Object newMineMap(int mines, int rows, int columns, long seed) throws Throwable{
+        return (Object)NEW_MINE_MAP.invokeExact(mines, rows, columns, seed);
+    }
+
+    static int probe(Object map, int x, int y) throws Throwable{
+        return (int)PROBE.invokeExact(map, x, y);
+    }
+
+    static int look(Object map, int x, int y) throws Throwable{
+        return (int)LOOK.invokeExact(map, x, y);
+    }
+
+    static boolean done(Object map) throws Throwable{
+        return (boolean)DONE.invokeExact(map);
+    }
+
+    static Object start(Object strategy, int rows, int columns, int mines, int[] board)
+            throws Throwable{
+        return (Object)START.invokeExact(strategy, rows, columns, mines, board);
+    }
+
+    static int[] step(Object session, int[] cells, int[] values) throws Throwable{
+        return (int[])STEP.invokeExact(session, cells, values);
+    }
+
+    static void close(Object session) throws Throwable{
+        CLOSE.invokeExact(session);
+    }
+
+    /**
+     * Empties the component cache shared by all strategies.
+     */
+    static void clearCache() throws Throwable{
+        CLEAR_CACHE.invokeExact();
+    }
+
+    static Object newContext(Object strategy) throws Throwable{
+        return (Object)NEW_CONTEXT.invokeExact(strategy);
+    }
+
+    static void cspSolver(Object context, ArrayList<Integer> assignment,
+            ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sums,
+            ArrayList<ArrayList<Integer>> solutions, int nrMinesLeft) throws Throwable{
+        CSP_SOLVER.invokeExact(context, assignment, constraints, sums, solutions, 0, 0, nrMinesLeft);
+    }
+
+    static boolean constraintSatisfied(Object context, ArrayList<Integer> vars,
+            ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sums,
+            boolean forwardChecking) throws Throwable{
+        return (boolean)CONSTRAINT_SATISFIED.invokeExact(context, vars, constraints, sums,
+            forwardChecking);
+    }
+}
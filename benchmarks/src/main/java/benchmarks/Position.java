@@ -0,0 +1,186 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * A saved board position, loaded from the positions resources. A position is
+ * stored as its size and mine count followed by one line per row, with '.'
+ * for unprobed, 'F' for marked and a digit for probed cells.
+ * @author joar
+ */
+final class Position {
+
+    // Values of look, see Map
+    private static final int MARKED = -3;
+    private static final int UNPROBED = -2;
+
+    final int rows;
+    final int columns;
+    final int mines;
+    final int[] board; // What look returns for each id, y*columns + x
+
+    private Position(int rows, int columns, int mines, int[] board){
+        this.rows = rows;
+        this.columns = columns;
+        this.mines = mines;
+        this.board = board;
+    }
+
+    /**
+     * Loads a position.
+     * @param name resource name without directory and extension
+     * @return the position
+     */
+    static Position load(String name) throws IOException{
+        InputStream in = Position.class.getResourceAsStream("/positions/" + name + ".txt");
+        if(in == null){
+            throw new IOException("No position " + name);
+        }
+        try(BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.US_ASCII))){
+            String line = reader.readLine();
+            while(line.startsWith("#")){
+                line = reader.readLine();
+            }
+            String[] size = line.trim().split("\\s+");
+            int columns = Integer.parseInt(size[0]);
+            int rows = Integer.parseInt(size[1]);
+            int mines = Integer.parseInt(size[2]);
+            int[] board = new int[rows*columns];
+            for(int y = 0; y < rows; y++){
+                line = reader.readLine();
+                for(int x = 0; x < columns; x++){
+                    char c = line.charAt(x);
+                    board[y*columns + x] = c == '.' ? UNPROBED : c == 'F' ? MARKED : c - '0';
+                }
+            }
+            return new Position(rows, columns, mines, board);
+        }
+    }
+
+    /**
+     * @return mines minus marks
+     */
+    int minesLeft(){
+        int left = mines;
+        for(int value:board){
+            if(value == MARKED){
+                left--;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Builds the CSP input of the largest fringe component with at most
+     * maxCells cells, the way OurStrategy does for the whole fringe.
+     * @param maxCells max cells in the component
+     * @param constraints filled with the constraints as lists of cell indices
+     * @param sums filled with the sum of each constraint
+     * @return number of cells in the component
+     */
+    int component(int maxCells, ArrayList<ArrayList<Integer>> constraints, ArrayList<Integer> sums){
+        // All constraints over fringe cell ids
+        ArrayList<int[]> cells = new ArrayList<>();
+        ArrayList<Integer> allSums = new ArrayList<>();
+        for(int id = 0; id < board.length; id++){
+            if(board[id] <= 0){
+                continue;
+            }
+            ArrayList<Integer> unprobed = new ArrayList<>();
+            int marked = 0;
+            for(int n:neighbors(id)){
+                if(board[n] == UNPROBED){
+                    unprobed.add(n);
+                }else if(board[n] == MARKED){
+                    marked++;
+                }
+            }
+            if(!unprobed.isEmpty()){
+                int[] c = new int[unprobed.size()];
+                for(int i = 0; i < c.length; i++){
+                    c[i] = unprobed.get(i);
+                }
+                cells.add(c);
+                allSums.add(board[id] - marked);
+            }
+        }
+
+        // Components by union of the cells of each constraint
+        int[] parent = new int[board.length];
+        for(int id = 0; id < parent.length; id++){
+            parent[id] = id;
+        }
+        for(int[] c:cells){
+            for(int id:c){
+                parent[root(parent, id)] = root(parent, c[0]);
+            }
+        }
+        int[] size = new int[board.length];
+        boolean[] counted = new boolean[board.length];
+        for(int[] c:cells){
+            for(int id:c){
+                if(!counted[id]){
+                    counted[id] = true;
+                    size[root(parent, id)]++;
+                }
+            }
+        }
+        int best = -1;
+        for(int id = 0; id < board.length; id++){
+            if(size[id] <= maxCells && (best < 0 || size[id] > size[best])){
+                best = id;
+            }
+        }
+
+        int[] index = new int[board.length];
+        java.util.Arrays.fill(index, -1);
+        int nCells = 0;
+        for(int i = 0; i < cells.size(); i++){
+            int[] c = cells.get(i);
+            if(root(parent, c[0]) != best){
+                continue;
+            }
+            ArrayList<Integer> constraint = new ArrayList<>();
+            for(int id:c){
+                if(index[id] < 0){
+                    index[id] = nCells++;
+                }
+                constraint.add(index[id]);
+            }
+            constraints.add(constraint);
+            sums.add(allSums.get(i));
+        }
+        return nCells;
+    }
+
+    private int[] neighbors(int id){
+        int x = id % columns;
+        int y = id / columns;
+        int[] found = new int[8];
+        int n = 0;
+        for(int dy = -1; dy <= 1; dy++){
+            for(int dx = -1; dx <= 1; dx++){
+                int nx = x + dx;
+                int ny = y + dy;
+                if((dx != 0 || dy != 0) && nx >= 0 && nx < columns && ny >= 0 && ny < rows){
+                    found[n++] = ny*columns + nx;
+                }
+            }
+        }
+        return java.util.Arrays.copyOf(found, n);
+    }
+
+    private static int root(int[] parent, int i){
+        while(parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The solver on saved positions: one full analysis by OurStrategy, and the
+ * CSP search and constraint check on the largest component it enumerates.
+ * The analysis is timed with the component cache emptied before every call,
+ * as on a position never seen before, and with the cache left warm.
+ * @author joar
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+    private static final int[] NONE = new int[0];
+
+    @Param({"beginner", "intermediate", "expert"})
+    public String position;
+
+    private Position p;
+    private Object strategy;
+    private Object context;
+    private final ArrayList<ArrayList<Integer>> constraints = new ArrayList<>();
+    private final ArrayList<Integer> sums = new ArrayList<>();
+    private final ArrayList<ArrayList<Integer>> solutions = new ArrayList<>();
+    private ArrayList<Integer> unassigned;
+    private ArrayList<Integer> halfAssigned; // A solution with its second half unassigned
+
+    @Setup
+    public void setup() throws Throwable{
+        p = Position.load(position);
+        strategy = Engine.newStrategy();
+        Engine.set(strategy, "nodeBudget", 0L); // Never give up the search half way
+        Engine.set(strategy, "timeBudgetMillis", 0L);
+        context = Engine.newContext(strategy);
+
+        int nCells = p.component(24, constraints, sums);
+        unassigned = new ArrayList<>();
+        for(int i = 0; i < nCells; i++){
+            unassigned.add(-1);
+        }
+        Engine.cspSolver(context, unassigned, constraints, sums, solutions, p.minesLeft());
+        halfAssigned = new ArrayList<>(solutions.get(0));
+        for(int i = nCells/2; i < nCells; i++){
+            halfAssigned.set(i, -1);
+        }
+    }
+
+    /**
+     * The component cache as probeMap finds it, only that benchmark runs with both
+     */
+    @State(Scope.Thread)
+    public static class Cache {
+
+        @Param({"cold", "warm"})
+        public String cache;
+
+        @Setup(Level.Invocation)
+        public void empty() throws Throwable{
+            if(cache.equals("cold")){
+                Engine.clearCache();
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] probeMap(Cache cache) throws Throwable{
+        // One analysis of the position, the moves are returned instead of made
+        Object session = Engine.start(strategy, p.rows, p.columns, p.mines, p.board);
+        try{
+            return Engine.step(session, NONE, NONE);
+        }finally{
+            Engine.close(session);
+        }
+    }
+
+    @Benchmark
+    public int cspSolver() throws Throwable{
+        solutions.clear();
+        Engine.cspSolver(context, unassigned, constraints, sums, solutions, p.minesLeft());
+        return solutions.size();
+    }
+
+    @Benchmark
+    public boolean constraintSatisfied() throws Throwable{
+        return Engine.constraintSatisfied(context, halfAssigned, constraints, sums, true);
+    }
+}
@@ -0,0 +1,118 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * CdclSolver against brute force on random clause sets, with and without
+ * assumptions and cardinality constraints.
+ * @author joar
+ */
+public class CdclSolverTest {
+
+    @Test
+    public void agreesWithBruteForceOnRandomClauses(){
+        Random random = new Random(29);
+        for(int n = 0; n < 20000; n++){
+            int nVars = 1 + random.nextInt(10);
+            int[][] clauses = new int[random.nextInt(5*nVars)][];
+            CdclSolver solver = new CdclSolver();
+            for(int v = 0; v < nVars; v++){
+                solver.newVar();
+            }
+            for(int c = 0; c < clauses.length; c++){
+                clauses[c] = new int[1 + random.nextInt(3)];
+                for(int i = 0; i < clauses[c].length; i++){
+                    int v = 1 + random.nextInt(nVars);
+                    clauses[c][i] = random.nextBoolean() ? v : -v;
+                }
+                solver.addClause(clauses[c]);
+            }
+            int assumed = 1 + random.nextInt(nVars);
+            int assumption = random.nextBoolean() ? assumed : -assumed;
+
+            boolean sat = solver.solve();
+            assertEquals(satisfiable(nVars, clauses, 0), sat);
+            if(sat){
+                assertTrue(model(solver, nVars, clauses));
+            }
+            // Assumptions hold for one call only
+            boolean satAssumed = solver.solve(assumption);
+            assertEquals(satisfiable(nVars, clauses, assumption), satAssumed);
+            if(satAssumed){
+                assertTrue(model(solver, nVars, clauses));
+                assertEquals(assumption > 0, solver.modelValue(assumed));
+            }
+            assertEquals(sat, solver.solve());
+        }
+    }
+
+    @Test
+    public void countsWithCardinalityConstraints(){
+        Random random = new Random(2);
+        for(int n = 0; n < 2000; n++){
+            int nVars = 2 + random.nextInt(12);
+            int[] literals = new int[nVars];
+            for(int v = 0; v < nVars; v++){
+                literals[v] = v + 1;
+            }
+            int k = random.nextInt(nVars + 1);
+            CdclSolver solver = new CdclSolver();
+            for(int v = 0; v < nVars; v++){
+                solver.newVar();
+            }
+            solver.addExactly(literals, k);
+            assertTrue(solver.solve());
+            int trues = 0;
+            for(int v = 1; v <= nVars; v++){
+                trues += solver.modelValue(v) ? 1 : 0;
+            }
+            assertEquals(k, trues);
+            // Forcing k+1 of them true contradicts the constraint
+            if(k < nVars){
+                int[] assumptions = new int[k + 1];
+                for(int i = 0; i <= k; i++){
+                    assumptions[i] = i + 1;
+                }
+                assertFalse(solver.solve(assumptions));
+                assertTrue(solver.solve());
+            }
+        }
+    }
+
+    // True if the clauses, and the assumption unless 0, have a model
+    private static boolean satisfiable(int nVars, int[][] clauses, int assumption){
+        for(int a = 0; a < 1 << nVars; a++){
+            if(assumption != 0 && (a >>> Math.abs(assumption) - 1 & 1) != (assumption > 0 ? 1 : 0)){
+                continue;
+            }
+            if(holds(a, clauses)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean model(CdclSolver solver, int nVars, int[][] clauses){
+        int a = 0;
+        for(int v = 1; v <= nVars; v++){
+            if(solver.modelValue(v)){
+                a |= 1 << v - 1;
+            }
+        }
+        return holds(a, clauses);
+    }
+
+    private static boolean holds(int assignment, int[][] clauses){
+        for(int[] clause:clauses){
+            boolean satisfied = false;
+            for(int lit:clause){
+                satisfied |= (assignment >>> Math.abs(lit) - 1 & 1) == (lit > 0 ? 1 : 0);
+            }
+            if(!satisfied){
+                return false;
+            }
+        }
+        return true;
+    }
+}
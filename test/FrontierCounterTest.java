@@ -0,0 +1,61 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * FrontierCounter against brute force: the counts by mines used must match
+ * the enumeration exactly, and the budget must stop it.
+ * @author joar
+ */
+public class FrontierCounterTest {
+
+    @Test
+    public void countsLikeBruteForce(){
+        Random random = new Random(30);
+        for(int n = 0; n < 20000; n++){
+            RandomFringe f = RandomFringe.create(random, 12);
+            FrontierCounter counter = FrontierCounter.count(f.nVars, f.constraints, f.sums,
+                f.maxMines, 0, 0, null);
+            assertNotNull(f.toString(), counter);
+            assertEquals(Math.min(f.nVars, f.maxMines), counter.maxMines());
+            for(int k = 0; k <= counter.maxMines(); k++){
+                assertEquals(f + ", " + k + " mines", f.solutions(k), counter.solutions(k), 0);
+                for(int v = 0; v < f.nVars; v++){
+                    assertEquals(f + ", variable " + v, f.mines(v, k), counter.mines(v, k), 0);
+                    assertEquals(f + ", variable " + v, f.solutions(k) - f.mines(v, k),
+                        counter.safe(v, k), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givesUpOverBudget(){
+        // A long row of cells under 1s, more steps than the clock is read every
+        int nVars = 400;
+        int[][] constraints = new int[nVars - 2][];
+        int[] sums = new int[nVars - 2];
+        for(int c = 0; c < constraints.length; c++){
+            constraints[c] = new int[]{c, c + 1, c + 2};
+            sums[c] = 1;
+        }
+        assertNotNull(FrontierCounter.count(nVars, constraints, sums, nVars, 0, 0, null));
+        assertNull(FrontierCounter.count(nVars, constraints, sums, nVars, 10, 0, null));
+        assertNull(FrontierCounter.count(nVars, constraints, sums, nVars, 0, System.nanoTime(), null));
+    }
+
+    @Test(expected = GameCancelledException.class)
+    public void stopsWhenCancelled(){
+        int nVars = 400;
+        int[][] constraints = new int[nVars - 2][];
+        int[] sums = new int[nVars - 2];
+        for(int c = 0; c < constraints.length; c++){
+            constraints[c] = new int[]{c, c + 1, c + 2};
+            sums[c] = 1;
+        }
+        CancellationToken token = new CancellationToken(0);
+        token.cancel();
+        FrontierCounter.count(nVars, constraints, sums, nVars, 0, 0, token);
+    }
+}
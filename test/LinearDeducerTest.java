@@ -0,0 +1,67 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * LinearDeducer against brute force: every cell it forces must be forced.
+ * @author joar
+ */
+public class LinearDeducerTest {
+
+    @Test
+    public void forcesOnlyForcedCells(){
+        Random random = new Random(28);
+        for(int n = 0; n < 20000; n++){
+            RandomFringe f = RandomFringe.create(random, 12);
+            int[] forced = LinearDeducer.deduce(f.nVars, f.constraints, f.sums);
+            for(int v = 0; v < f.nVars; v++){
+                if(forced[v] != LinearDeducer.UNKNOWN){
+                    assertEquals(f + ", variable " + v, f.forced(v, f.nVars), forced[v]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solvesChains(){
+        // 1-2-1 along a wall: the middle cell is safe, the outer two are mines
+        int[] forced = LinearDeducer.deduce(3, new int[][]{{0, 1}, {0, 1, 2}, {1, 2}},
+            new int[]{1, 2, 1});
+        assertArrayEquals(new int[]{1, 0, 1}, forced);
+    }
+
+    @Test
+    public void keepsWhatWasFoundWhenCoefficientsOverflow(){
+        // Dense rows with large sums, the elimination may give up but never be wrong
+        Random random = new Random(1);
+        for(int n = 0; n < 200; n++){
+            int nVars = 60;
+            int[][] constraints = new int[nVars][];
+            int[] sums = new int[nVars];
+            boolean[] mine = new boolean[nVars];
+            for(int v = 0; v < nVars; v++){
+                mine[v] = random.nextBoolean();
+            }
+            for(int c = 0; c < nVars; c++){
+                int length = 20 + random.nextInt(20);
+                java.util.TreeSet<Integer> vars = new java.util.TreeSet<>();
+                while(vars.size() < length){
+                    vars.add(random.nextInt(nVars));
+                }
+                constraints[c] = new int[length];
+                int i = 0;
+                for(int v:vars){
+                    constraints[c][i++] = v;
+                    sums[c] += mine[v] ? 1 : 0;
+                }
+            }
+            int[] forced = LinearDeducer.deduce(nVars, constraints, sums);
+            for(int v = 0; v < nVars; v++){
+                if(forced[v] != LinearDeducer.UNKNOWN){
+                    assertEquals(mine[v] ? 1 : 0, forced[v]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * PatternTable keys are the same in every orientation of the board.
+ * @author joar
+ */
+public class PatternTableTest {
+
+    private static final int[] VALUES = {Map.UNPROBED, Map.MARKED, 0, 1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Test
+    public void keysIgnoreRotationsAndReflections(){
+        Random random = new Random(35);
+        int[] scratch = new int[PatternTable.SCRATCH];
+        for(int n = 0; n < 20000; n++){
+            int rows = 1 + random.nextInt(8);
+            int cols = 1 + random.nextInt(8);
+            int[] board = new int[rows*cols];
+            for(int id = 0; id < board.length; id++){
+                board[id] = VALUES[random.nextInt(VALUES.length)];
+            }
+            int x = random.nextInt(cols);
+            int y = random.nextInt(rows);
+            long key = PatternTable.key(board, rows, cols, y*cols + x);
+
+            // Transposed and mirrored left to right, rows and columns swap
+            int[] turned = new int[board.length];
+            for(int id = 0; id < board.length; id++){
+                turned[(id % cols)*rows + rows - 1 - id / cols] = board[id];
+            }
+            assertEquals(key, PatternTable.key(turned, cols, rows, x*rows + rows - 1 - y, scratch));
+
+            // Mirrored top to bottom
+            int[] flipped = new int[board.length];
+            for(int id = 0; id < board.length; id++){
+                flipped[(rows - 1 - id / cols)*cols + id % cols] = board[id];
+            }
+            assertEquals(key, PatternTable.key(flipped, rows, cols, (rows - 1 - y)*cols + x, scratch));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.*;
+
+/**
+ * Random fringe-like constraint system with its solutions counted by brute
+ * force, for checking the solvers against. The cells lie on a short strip
+ * and every constraint covers a few cells close to each other, as the
+ * numbers along a fringe do. The sums come from a hidden mine layout, so
+ * the system always has a solution.
+ * @author joar
+ */
+final class RandomFringe {
+
+    final int nVars;
+    final int[][] constraints;
+    final int[] sums;
+    final int maxMines; // At least the mines of the hidden layout
+
+    private final long[] solutions; // by mines used
+    private final long[][] mines; // [v][k] solutions with k mines where v is a mine
+
+    private RandomFringe(int nVars, int[][] constraints, int[] sums, int maxMines){
+        this.nVars = nVars;
+        this.constraints = constraints;
+        this.sums = sums;
+        this.maxMines = maxMines;
+        solutions = new long[nVars + 1];
+        mines = new long[nVars][nVars + 1];
+        for(int a = 0; a < 1 << nVars; a++){
+            if(satisfies(a)){
+                int k = Integer.bitCount(a);
+                solutions[k]++;
+                for(int v = 0; v < nVars; v++){
+                    if((a >>> v & 1) != 0){
+                        mines[v][k]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a random system.
+     * @param random the random source
+     * @param maxVars most variables, enumerated in 2^maxVars steps
+     * @return the system
+     */
+    static RandomFringe create(Random random, int maxVars){
+        int nVars = 1 + random.nextInt(maxVars);
+        boolean[] mine = new boolean[nVars];
+        int nrMines = 0;
+        for(int v = 0; v < nVars; v++){
+            mine[v] = random.nextInt(3) == 0;
+            nrMines += mine[v] ? 1 : 0;
+        }
+        int nCons = 1 + random.nextInt(nVars + 2);
+        int[][] constraints = new int[nCons][];
+        int[] sums = new int[nCons];
+        for(int c = 0; c < nCons; c++){
+            TreeSet<Integer> vars = new TreeSet<>();
+            int from = random.nextInt(nVars);
+            int length = 1 + random.nextInt(Math.min(8, nVars));
+            for(int i = 0; i < length; i++){
+                vars.add(Math.min(nVars - 1, from + random.nextInt(4)));
+            }
+            constraints[c] = new int[vars.size()];
+            int i = 0;
+            for(int v:vars){
+                constraints[c][i++] = v;
+                sums[c] += mine[v] ? 1 : 0;
+            }
+        }
+        return new RandomFringe(nVars, constraints, sums, nrMines + random.nextInt(nVars - nrMines + 1));
+    }
+
+    /**
+     * @param k mines used
+     * @return number of solutions with k mines
+     */
+    long solutions(int k){
+        return solutions[k];
+    }
+
+    /**
+     * @param v variable
+     * @param k mines used
+     * @return number of solutions with k mines in which v is a mine
+     */
+    long mines(int v, int k){
+        return mines[v][k];
+    }
+
+    /**
+     * @param v variable
+     * @param maxMines most mines a solution may use
+     * @return 1 if v is a mine in every solution with at most maxMines mines, 0 if
+     * it is safe in every one, LinearDeducer.UNKNOWN otherwise
+     */
+    int forced(int v, int maxMines){
+        long all = 0;
+        long mine = 0;
+        for(int k = 0; k <= Math.min(maxMines, nVars); k++){
+            all += solutions[k];
+            mine += mines[v][k];
+        }
+        return mine == 0 ? 0 : mine == all ? 1 : LinearDeducer.UNKNOWN;
+    }
+
+    /**
+     * @param assignment bit v set if variable v is a mine
+     * @return true if every constraint holds
+     */
+    boolean satisfies(int assignment){
+        for(int c = 0; c < constraints.length; c++){
+            int sum = 0;
+            for(int v:constraints[c]){
+                sum += assignment >>> v & 1;
+            }
+            if(sum != sums[c]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString(){
+        return nVars + " variables, at most " + maxMines + " mines, constraints "
+            + Arrays.deepToString(constraints) + " sums " + Arrays.toString(sums);
+    }
+}
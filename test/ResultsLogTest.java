@@ -0,0 +1,57 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ResultsLog resumes only the logs of the same run.
+ * @author joar
+ */
+public class ResultsLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesAndDropsATornRecord() throws IOException{
+        File f = logWithTornRecord();
+        ProgressReporter reporter = new ProgressReporter(new ByteArrayOutputStream(), 0);
+        try(ResultsLog log = ResultsLog.open(f.getPath(), "OurStrategy", 99, 16, 30, 0,
+                reporter.recorder())){
+            assertEquals(2, log.restored());
+            assertTrue(log.done(8));
+            assertFalse(log.done(9));
+        }
+        assertEquals(2, reporter.played());
+    }
+
+    @Test
+    public void leavesTheLogOfAnotherRunAlone() throws IOException{
+        File f = logWithTornRecord();
+        long length = f.length();
+        ProgressReporter reporter = new ProgressReporter(new ByteArrayOutputStream(), 0);
+        try{
+            ResultsLog.open(f.getPath(), "OurStrategy", 40, 16, 16, 0, reporter.recorder());
+            fail("opened the log of another run");
+        }catch(IOException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("is a log of"));
+        }
+        assertEquals(length, f.length());
+        assertEquals(0, reporter.played());
+    }
+
+    // Expert log from seed 7 with two games and half of a third
+    private File logWithTornRecord() throws IOException{
+        File f = new File(folder.getRoot(), "results.log");
+        try(ResultsLog log = ResultsLog.open(f.getPath(), "OurStrategy", 99, 16, 30, 7, null)){
+            log.append(7, BatchRunner.WON, true, 120, 1000000);
+            log.append(8, BatchRunner.LOST, true, 40, 500000);
+        }
+        try(FileOutputStream out = new FileOutputStream(f, true)){
+            out.write(new byte[10]);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * SatDeducer against brute force: it must find exactly the forced cells,
+ * with the mine limit taken into account.
+ * @author joar
+ */
+public class SatDeducerTest {
+
+    @Test
+    public void findsExactlyTheForcedCells(){
+        Random random = new Random(29);
+        for(int n = 0; n < 20000; n++){
+            RandomFringe f = RandomFringe.create(random, 12);
+            int[] forced = SatDeducer.deduce(f.nVars, f.constraints, f.sums, f.maxMines, 0, null);
+            for(int v = 0; v < f.nVars; v++){
+                assertEquals(f + ", variable " + v, f.forced(v, f.maxMines), forced[v]);
+            }
+        }
+    }
+
+    @Test(expected = GameCancelledException.class)
+    public void stopsWhenCancelled(){
+        CancellationToken token = new CancellationToken(0);
+        token.cancel();
+        int[][] constraints = pigeonhole();
+        int[] sums = new int[constraints.length];
+        Arrays.fill(sums, 1);
+        SatDeducer.deduce(12, constraints, sums, 12, 0, token);
+    }
+
+    @Test
+    public void givesUpAtTheDeadline(){
+        int[][] constraints = pigeonhole();
+        int[] sums = new int[constraints.length];
+        Arrays.fill(sums, 1);
+        int[] forced = SatDeducer.deduce(12, constraints, sums, 12, System.nanoTime(), null);
+        for(int v = 0; v < 12; v++){
+            assertEquals(LinearDeducer.UNKNOWN, forced[v]);
+        }
+    }
+
+    // 4 pigeons in 3 holes, each sum 1: unit propagation alone can't refute it
+    private static int[][] pigeonhole(){
+        int[][] constraints = new int[7][];
+        for(int i = 0; i < 4; i++){
+            constraints[i] = new int[]{3*i, 3*i + 1, 3*i + 2};
+        }
+        for(int j = 0; j < 3; j++){
+            constraints[4 + j] = new int[]{j, 3 + j, 6 + j, 9 + j};
+        }
+        return constraints;
+    }
+}
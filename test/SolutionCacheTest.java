@@ -0,0 +1,43 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * SolutionCache stays within its bytes, evicting the least recently used.
+ * @author joar
+ */
+public class SolutionCacheTest {
+
+    @Test
+    public void evictsByBytesNotEntries(){
+        SolutionCache cache = new SolutionCache(4096);
+        cache.put("a", new long[1]);
+        cache.put("b", new long[1]);
+        cache.get("a");
+        cache.put("c", new long[480]); // Too large to keep both small ones with it
+        assertTrue(cache.bytes() <= 4096);
+        assertNotNull(cache.get("c"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void skipsEntriesLargerThanTheCache(){
+        SolutionCache cache = new SolutionCache(4096);
+        cache.put("a", new long[1]);
+        cache.put("b", new long[1000]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void replacingAnEntryCountsItOnce(){
+        SolutionCache cache = new SolutionCache(4096);
+        cache.put("a", new long[100]);
+        long bytes = cache.bytes();
+        cache.put("a", new long[100]);
+        assertEquals(bytes, cache.bytes());
+        cache.clear();
+        assertEquals(0, cache.bytes());
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * A game played in steps ends as the same game played through probeMap. The
+ * step caller applies the id << 1 | MARK moves of every batch to the board
+ * and hands back the cells they changed. Batches differ, probeMap probes
+ * around a 0 at once and a session only in the next step, but what is sure
+ * is found either way and the guesses see the same boards. The guesses are
+ * kept out of reach of the clock: no search budgets, so nothing is sampled,
+ * and no timed lookahead.
+ * @author joar
+ */
+public class StepSessionTest {
+
+    @Test
+    public void playsLikeProbeMap(){
+        for(long seed = 0; seed < 40; seed++){
+            MineMap stepped = new MineMap(40, 16, 16, seed);
+            MineMap probed = new MineMap(40, 16, 16, seed);
+            playInSteps(newStrategy(), stepped);
+            OurStrategy s = newStrategy();
+            while(!probed.done()){
+                s.probeMap(probed);
+            }
+            assertEquals("seed " + seed, probed.won(), stepped.won());
+            assertArrayEquals("seed " + seed, probedCells(probed), probedCells(stepped));
+        }
+    }
+
+    private static OurStrategy newStrategy(){
+        OurStrategy s = new OurStrategy();
+        s.log = LogSink.NONE;
+        s.nodeBudget = 0;
+        s.timeBudgetMillis = 0;
+        s.lookaheadCandidates = 1;
+        return s;
+    }
+
+    private static void playInSteps(OurStrategy s, MineMap m){
+        int cols = m.columns();
+        int[] board = board(m);
+        StepStrategy.Session session = s.start(m.rows(), cols, m.mines_minus_marks(), board);
+        try{
+            int[] cells = new int[0];
+            int[] values = new int[0];
+            while(!m.done()){
+                for(int move:session.step(cells, values)){
+                    if(m.done()){
+                        break;
+                    }
+                    int id = move >>> 1;
+                    if((move & StepStrategy.MARK) != 0){
+                        m.mark(id % cols, id / cols);
+                    }else{
+                        m.probe(id % cols, id / cols);
+                    }
+                }
+                int[] now = board(m);
+                int changed = 0;
+                cells = new int[now.length];
+                values = new int[now.length];
+                for(int id = 0; id < now.length; id++){
+                    if(now[id] != board[id]){
+                        cells[changed] = id;
+                        values[changed++] = now[id];
+                    }
+                }
+                cells = Arrays.copyOf(cells, changed);
+                values = Arrays.copyOf(values, changed);
+                board = now;
+            }
+        }finally{
+            session.close();
+        }
+    }
+
+    // The board with marks shown as unprobed, which mines get marked before the end depends on the batches
+    private static int[] probedCells(Map m){
+        int[] board = board(m);
+        for(int id = 0; id < board.length; id++){
+            if(board[id] == Map.MARKED){
+                board[id] = Map.UNPROBED;
+            }
+        }
+        return board;
+    }
+
+    private static int[] board(Map m){
+        int cols = m.columns();
+        int[] board = new int[m.rows()*cols];
+        for(int id = 0; id < board.length; id++){
+            board[id] = m.look(id % cols, id / cols);
+        }
+        return board;
+    }
+}